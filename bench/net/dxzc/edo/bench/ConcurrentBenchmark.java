@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo.bench;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import net.dxzc.edo.ConcurrentDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 共享文档在以读为主时的吞吐. 以{@code -t}改变读取线程数,观察读取吞吐是否随核心数增长
+ *
+ * @author 823984418@qq.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConcurrentBenchmark {
+
+    private ConcurrentDocument document;
+
+    @Setup(Level.Iteration)
+    public void open() {
+        document = new ConcurrentDocument(Texts.document(Texts.lines(100000, 60, 1)));
+    }
+
+    @State(Scope.Thread)
+    public static class Reader {
+
+        ConcurrentDocument.Cursor cursor;
+
+        @Setup(Level.Iteration)
+        public void open(ConcurrentBenchmark shared) {
+            cursor = shared.document.createCursor(false);
+            cursor.moveTo(ThreadLocalRandom.current().nextInt(shared.document.getLength()));
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() {
+            cursor.dispose();
+        }
+
+    }
+
+    /**
+     * 只有读取.
+     *
+     * @param reader 读取线程的游标
+     * @return 读取的字符
+     */
+    @Benchmark
+    public int readOnly(Reader reader) {
+        return reader.cursor.readChar() + document.getLength();
+    }
+
+    /**
+     * 读取与少量修改混合时的读取.
+     *
+     * @param reader 读取线程的游标
+     * @return 读取的字符
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public int mixedRead(Reader reader) {
+        return reader.cursor.readChar() + document.getLength();
+    }
+
+    /**
+     * 读取与少量修改混合时的修改. 插入再删除一个字符,文档内容不变
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedWrite() {
+        int pos = ThreadLocalRandom.current().nextInt(document.getLength());
+        document.replace(pos, pos, "x");
+        document.replace(pos, pos + 1, "");
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import net.dxzc.edo.Document;
+import net.dxzc.edo.Pointer;
+
+/**
+ * 与{@link StringBuilder}对照的随机修改检查. 在运行基准测试之前确认优化没有改变行为
+ *
+ * @author 823984418@qq.com
+ */
+public final class Differential {
+
+    private Differential() {
+    }
+
+    /**
+     * 一次编辑. 撤销时以{@link #removed}替换{@link #inserted},重做时反之
+     */
+    private static final class Edit {
+
+        final int start;
+
+        final String removed;
+
+        final String inserted;
+
+        Edit(int start, String removed, String inserted) {
+            this.start = start;
+            this.removed = removed;
+            this.inserted = inserted;
+        }
+
+    }
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        run(rounds, seed);
+        System.out.println("differential check passed: " + rounds + " edits");
+    }
+
+    /**
+     * 执行随机修改并逐步对照.
+     *
+     * @param rounds 修改次数
+     * @param seed 种子
+     */
+    public static void run(int rounds, long seed) {
+        Random random = new Random(seed);
+        Document document = new Document();
+        StringBuilder oracle = new StringBuilder();
+        List<Pointer> pointers = new ArrayList<>();
+        List<Integer> expected = new ArrayList<>();
+        List<Edit> done = new ArrayList<>();
+        List<Edit> undone = new ArrayList<>();
+        for (int round = 0; round < rounds; round++) {
+            int length = oracle.length();
+            int op = random.nextInt(10);
+            if (op == 0 && pointers.size() < 64) {
+                Pointer p = new Pointer(document, random.nextBoolean());
+                int pos = random.nextInt(length + 1);
+                p.moveTo(pos);
+                pointers.add(p);
+                expected.add(pos);
+            } else if (op == 1 && !done.isEmpty()) {
+                //撤销以普通的替换撤回编辑,指针按同样的规则移动
+                if (!document.undo()) {
+                    throw new IllegalStateException("round " + round + ": undo");
+                }
+                Edit edit = done.remove(done.size() - 1);
+                undone.add(edit);
+                apply(oracle, pointers, expected, edit.start, edit.inserted.length(), edit.removed);
+            } else if (op == 2 && !undone.isEmpty()) {
+                if (!document.redo()) {
+                    throw new IllegalStateException("round " + round + ": redo");
+                }
+                Edit edit = undone.remove(undone.size() - 1);
+                done.add(edit);
+                apply(oracle, pointers, expected, edit.start, edit.removed.length(), edit.inserted);
+            } else {
+                int start = random.nextInt(length + 1);
+                int end = start + random.nextInt(Math.min(length - start, 40) + 1);
+                String text = text(random);
+                Pointer s = new Pointer(document);
+                Pointer e = new Pointer(document);
+                s.moveTo(start);
+                e.moveTo(end);
+                document.replace(s, e, text);
+                s.dispose();
+                e.dispose();
+                document.breakUndo();
+                if (end > start || !text.isEmpty()) {
+                    done.add(new Edit(start, oracle.substring(start, end), text));
+                    undone.clear();
+                }
+                apply(oracle, pointers, expected, start, end - start, text);
+            }
+            check(document, oracle, pointers, expected, round);
+        }
+    }
+
+    /**
+     * 在对照的内容和指针位置上应用一次替换.
+     */
+    private static void apply(StringBuilder oracle, List<Pointer> pointers, List<Integer> expected,
+            int start, int length, String text) {
+        int end = start + length;
+        oracle.replace(start, end, text);
+        for (int i = 0; i < pointers.size(); i++) {
+            int p = expected.get(i);
+            if (p > end || p == end && end > start) {
+                p += text.length() - length;
+            } else if (p > start || p == start && pointers.get(i).isStickyRight()) {
+                p = start + text.length();
+            }
+            expected.set(i, p);
+        }
+    }
+
+    private static String text(Random random) {
+        int n = random.nextInt(4) == 0 ? random.nextInt(40) : random.nextInt(4);
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++) {
+            int k = random.nextInt(12);
+            sb.append(k == 0 ? '\n' : k == 1 ? '中' : k == 2 ? 'é' : (char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    private static void check(Document document, StringBuilder oracle, List<Pointer> pointers, List<Integer> expected, int round) {
+        String text = oracle.toString();
+        Texts.verify(document, text);
+        int lines = 1;
+        int lineStart = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i == text.length() || text.charAt(i) == '\n') {
+                String line = document.getLine(lines).toString();
+                if (!line.equals(text.substring(lineStart, i))) {
+                    throw new IllegalStateException("round " + round + ": line " + lines);
+                }
+                if (i < text.length()) {
+                    lines++;
+                    lineStart = i + 1;
+                }
+            }
+        }
+        if (document.getLineCount() != lines) {
+            throw new IllegalStateException("round " + round + ": line count");
+        }
+        for (int i = 0; i < pointers.size(); i++) {
+            if (pointers.get(i).getPos() != expected.get(i)) {
+                throw new IllegalStateException("round " + round + ": pointer " + i);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.dxzc.edo.Document;
+import net.dxzc.edo.Pointer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 按位置和按行随机移动指针.
+ *
+ * @author 823984418@qq.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MoveBenchmark {
+
+    private static final int TARGETS = 1024;
+
+    @Param({"1000", "100000", "1000000"})
+    public int documentLines;
+
+    private Document document;
+
+    private Pointer pointer;
+
+    private int[] positions;
+
+    private int[] lineNumbers;
+
+    @Setup
+    public void open() {
+        String text = Texts.lines(documentLines, 60, 1);
+        document = Texts.document(text);
+        pointer = new Pointer(document);
+        Random random = new Random(2);
+        positions = new int[TARGETS];
+        lineNumbers = new int[TARGETS];
+        for (int i = 0; i < TARGETS; i++) {
+            positions[i] = random.nextInt(document.getLength() + 1);
+            lineNumbers[i] = 1 + random.nextInt(document.getLineCount());
+        }
+        int pos = positions[0];
+        pointer.moveTo(pos);
+        int line = 1;
+        for (int i = 0; i < pos; i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        if (pointer.getLineNumber() != line) {
+            throw new IllegalStateException("line " + pointer.getLineNumber() + " != " + line);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TARGETS)
+    public void moveToPos(Blackhole bh) {
+        for (int pos : positions) {
+            pointer.moveTo(pos);
+            bh.consume(pointer.getLineNumber());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TARGETS)
+    public void moveToLine(Blackhole bh) {
+        for (int line : lineNumbers) {
+            pointer.moveTo(line, 0);
+            bh.consume(pointer.getPos());
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.dxzc.edo.Document;
+import net.dxzc.edo.Pointer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 在大文档的随机位置粘贴多行文本.
+ *
+ * @author 823984418@qq.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PasteBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int documentLines;
+
+    @Param({"10", "1000"})
+    public int pasteLines;
+
+    private String initial;
+
+    private char[] clip;
+
+    private Document document;
+
+    private Pointer at;
+
+    private Random random;
+
+    private StringBuilder oracle;
+
+    @Setup(Level.Trial)
+    public void text() {
+        initial = Texts.lines(documentLines, 60, 1);
+        clip = (Texts.lines(pasteLines, 60, 2) + "\n").toCharArray();
+    }
+
+    @Setup(Level.Iteration)
+    public void open() {
+        document = Texts.document(initial);
+        at = new Pointer(document);
+        random = new Random(3);
+        oracle = documentLines <= 10000 ? new StringBuilder(initial) : null;
+    }
+
+    @TearDown(Level.Iteration)
+    public void verify() {
+        if (oracle != null) {
+            Texts.verify(document, oracle);
+        }
+    }
+
+    @Benchmark
+    public void paste() {
+        int pos = random.nextInt(document.getLength() + 1);
+        at.moveTo(pos);
+        document.replace(at, at, clip, 0, clip.length);
+        if (oracle != null) {
+            oracle.insert(pos, clip);
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.dxzc.edo.Document;
+import net.dxzc.edo.Pointer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 存活的指针增多时的修改代价. 指针分布在整个文档中,或集中在被修改的行上
+ *
+ * @author 823984418@qq.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PointerBenchmark {
+
+    private static final char[] LINE = {'a', '\n', 'b'};
+
+    @Param({"0", "100", "10000", "1000000"})
+    public int pointers;
+
+    @Param({"false", "true"})
+    public boolean sameLine;
+
+    private Document document;
+
+    private Pointer[] live;
+
+    private Pointer start;
+
+    private Pointer end;
+
+    private int lines;
+
+    @Setup(Level.Iteration)
+    public void open() {
+        document = Texts.document(Texts.lines(100000, 60, 1));
+        document.setUndoLimit(0);
+        Random random = new Random(2);
+        live = new Pointer[pointers];
+        int middle = document.getLineCount() / 2;
+        for (int i = 0; i < pointers; i++) {
+            Pointer p = new Pointer(document, random.nextBoolean());
+            if (sameLine) {
+                p.moveTo(middle, random.nextInt(document.getLine(middle).length() + 1));
+            } else {
+                p.moveTo(random.nextInt(document.getLength() + 1));
+            }
+            live[i] = p;
+        }
+        start = new Pointer(document);
+        end = new Pointer(document);
+        lines = document.getLineCount();
+    }
+
+    @TearDown(Level.Iteration)
+    public void verify() {
+        if (document.getLineCount() != lines) {
+            throw new IllegalStateException("line count " + document.getLineCount() + " != " + lines);
+        }
+        for (Pointer p : live) {
+            if (p.getPos() > document.getLength()) {
+                throw new IllegalStateException("pointer out of range");
+            }
+        }
+    }
+
+    /**
+     * 在中间行插入再删除一个换行符,文档内容不变.
+     */
+    @Benchmark
+    public void splitAndJoin() {
+        int middle = lines / 2;
+        start.moveTo(middle, 1);
+        end.set(start);
+        document.replace(start, end, LINE, 1, 2);
+        start.moveTo(middle, 1);
+        end.moveTo(middle + 1, 0);
+        document.replace(start, end, LINE, 0, 0);
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo.bench;
+
+import java.util.Random;
+import net.dxzc.edo.Document;
+import net.dxzc.edo.Pointer;
+
+/**
+ * 基准测试使用的文本和文档.
+ *
+ * @author 823984418@qq.com
+ */
+final class Texts {
+
+    private Texts() {
+    }
+
+    /**
+     * 生成若干行可重现的ASCII文本,最后一行之后没有换行符.
+     *
+     * @param lines 行数
+     * @param width 平均行宽
+     * @param seed 种子
+     * @return 文本
+     */
+    static String lines(int lines, int width, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(lines * (width + 1));
+        for (int i = 0; i < lines; i++) {
+            if (i != 0) {
+                sb.append('\n');
+            }
+            int n = width / 2 + random.nextInt(width + 1);
+            for (int j = 0; j < n; j++) {
+                sb.append(random.nextInt(6) == 0 ? ' ' : (char) ('a' + random.nextInt(26)));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 以文本构建文档.
+     *
+     * @param text 文本
+     * @return 文档
+     */
+    static Document document(String text) {
+        Document document = new Document();
+        Pointer p = new Pointer(document);
+        document.replace(p, p, text);
+        p.dispose();
+        document.clearUndo();
+        return document;
+    }
+
+    /**
+     * 检查文档与预期内容相同.
+     *
+     * @param document 文档
+     * @param expected 预期内容
+     */
+    static void verify(Document document, CharSequence expected) {
+        if (document.getLength() != expected.length()) {
+            throw new IllegalStateException("length " + document.getLength() + " != " + expected.length());
+        }
+        if (!document.toString().contentEquals(expected)) {
+            throw new IllegalStateException("content differs");
+        }
+    }
+
+}
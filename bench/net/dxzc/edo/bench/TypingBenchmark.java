@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo.bench;
+
+import java.util.concurrent.TimeUnit;
+import net.dxzc.edo.Document;
+import net.dxzc.edo.Pointer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 在一个长行中间逐字符输入和退格.
+ *
+ * @author 823984418@qq.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TypingBenchmark {
+
+    private static final char[] KEY = {'x'};
+
+    @Param({"100", "10000", "1000000"})
+    public int lineLength;
+
+    private String initial;
+
+    private int at;
+
+    private Document document;
+
+    private Pointer caret;
+
+    private Pointer back;
+
+    private int typed;
+
+    @Setup(Level.Trial)
+    public void text() {
+        initial = Texts.lines(100, 80, 1) + "\n" + Texts.lines(1, lineLength * 2 / 3, 2) + "\n" + Texts.lines(100, 80, 3);
+        at = initial.indexOf('\n', initial.length() / 2) - lineLength / 3;
+    }
+
+    @Setup(Level.Iteration)
+    public void open() {
+        document = Texts.document(initial);
+        caret = new Pointer(document, true);
+        caret.moveTo(Math.max(at, 0));
+        back = new Pointer(document);
+        typed = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void verify() {
+        Texts.verify(document, new StringBuilder(initial).insert(Math.max(at, 0), "x".repeat(typed)));
+    }
+
+    @Benchmark
+    public void type() {
+        document.replace(caret, caret, KEY, 0, 1);
+        typed++;
+    }
+
+    @Benchmark
+    public void typeAndDelete() {
+        document.replace(caret, caret, KEY, 0, 1);
+        back.set(caret);
+        back.move(-1);
+        document.replace(back, caret, KEY, 0, 0);
+    }
+
+}
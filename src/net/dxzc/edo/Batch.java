@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+
+/**
+ * 一批编辑. 所有编辑的位置都相对于批次开始前的文档,范围不得重叠.
+ * 提交时从文档尾部向前依次应用,并作为一次编辑撤销
+ * <p>
+ * 编辑以整数数组和一个共用的字符数组记录,不需要构建{@link Pointer}
+ *
+ * @author 823984418@qq.com
+ * @see Document#edit(java.util.function.Consumer)
+ */
+public final class Batch {
+
+    Batch(Document document) {
+        this.document = document;
+        this.modCount = document.modCount;
+    }
+
+    /**
+     * 所归属的文档对象.
+     */
+    public final Document document;
+
+    private final int modCount;
+
+    int[] pos = new int[8];
+
+    int[] len = new int[8];
+
+    /**
+     * 第i个编辑的内容位于{@code text[offsets[i], offsets[i + 1])}.
+     */
+    int[] offsets = new int[9];
+
+    char[] text = new char[64];
+
+    private int size;
+
+    /**
+     * 应用的逆序. 在提交时排序
+     */
+    private long[] order;
+
+    private int created;
+
+    private int deleted;
+
+    private int scanned;
+
+    private int shifted;
+
+    private int realloc;
+
+    /**
+     * 获取编辑的数量.
+     *
+     * @return 编辑数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 替换范围内的内容.
+     *
+     * @param start 范围开始的位置
+     * @param length 范围的长度
+     * @param content 内容
+     * @return 此批次
+     */
+    public Batch replace(int start, int length, CharSequence content) {
+        int n = content.length();
+        int at = add(start, length, n);
+        if (content instanceof String) {
+            ((String) content).getChars(0, n, text, at);
+        } else {
+            for (int i = 0; i < n; i++) {
+                text[at + i] = content.charAt(i);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 替换范围内的内容.
+     *
+     * @param start 范围开始的位置
+     * @param length 范围的长度
+     * @param content 缓冲
+     * @param begin 缓冲开始
+     * @param contentEnd 缓冲结束
+     * @return 此批次
+     */
+    public Batch replace(int start, int length, char[] content, int begin, int contentEnd) {
+        if (begin < 0 || begin > contentEnd || contentEnd > content.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        int at = add(start, length, contentEnd - begin);
+        System.arraycopy(content, begin, text, at, contentEnd - begin);
+        return this;
+    }
+
+    /**
+     * 替换从指定行和偏移开始的范围内的内容.
+     *
+     * @param lineNumber 行号,从1计数
+     * @param offset 行内偏移
+     * @param length 范围的长度
+     * @param content 内容
+     * @return 此批次
+     */
+    public Batch replace(int lineNumber, int offset, int length, CharSequence content) {
+        Line line = document.getLine(lineNumber);
+        if (offset < 0 || offset > line.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        return replace(LineTree.startOf(line) + offset, length, content);
+    }
+
+    /**
+     * 在指定位置插入内容.
+     *
+     * @param start 位置
+     * @param content 内容
+     * @return 此批次
+     */
+    public Batch insert(int start, CharSequence content) {
+        return replace(start, 0, content);
+    }
+
+    /**
+     * 删除范围内的内容.
+     *
+     * @param start 范围开始的位置
+     * @param length 范围的长度
+     * @return 此批次
+     */
+    public Batch delete(int start, int length) {
+        return replace(start, length, "");
+    }
+
+    /**
+     * 登记一个编辑并为其内容分配空间.
+     *
+     * @return 内容的开始位置
+     */
+    private int add(int start, int length, int n) {
+        if (document.modCount != modCount) {
+            throw new ConcurrentModificationException();
+        }
+        if (start < 0 || length < 0 || start > document.length - length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (size == pos.length) {
+            pos = Arrays.copyOf(pos, size * 2);
+            len = Arrays.copyOf(len, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2 + 1);
+        }
+        int at = offsets[size];
+        if (at + n > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, at + n));
+        }
+        pos[size] = start;
+        len[size] = length;
+        offsets[++size] = at + n;
+        return at;
+    }
+
+    /**
+     * 从后向前应用所有编辑.
+     */
+    void commit() {
+        if (document.modCount != modCount) {
+            throw new ConcurrentModificationException();
+        }
+        if (size == 0) {
+            return;
+        }
+        //按位置降序,同一位置的非空范围在前,同一位置的插入按登记的逆序
+        order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (long) pos[i] << 32 | (len[i] > 0 ? 1L << 31 : 0) | i;
+        }
+        Arrays.sort(order);
+        int limit = document.length;
+        int end = 0;
+        int add = 0;
+        for (int k = size - 1; k >= 0; k--) {
+            int i = (int) order[k] & Integer.MAX_VALUE;
+            if (pos[i] + len[i] > limit) {
+                throw new IllegalArgumentException("overlapping edits");
+            }
+            limit = pos[i];
+            end = Math.max(end, pos[i] + len[i]);
+            add += offsets[i + 1] - offsets[i] - len[i];
+        }
+        int start = limit;
+        Document d = document;
+        ReplaceEvent event = new ReplaceEvent();
+        event.begin();
+        long time = d.getMetrics() != null ? System.nanoTime() : 0;
+        int sn = LineTree.indexOf(d.tree.getByPos(start)) + 1;
+        int en = LineTree.indexOf(d.tree.getByPos(end)) + 1;
+        //未启用撤销时以临时的日志记录,以便失败时撤回
+        UndoJournal undo = d.undo;
+        UndoJournal journal = undo != null ? undo : new UndoJournal(Long.MAX_VALUE);
+        d.undo = journal;
+        d.batching = this;
+        journal.beginGroup();
+        try {
+            for (int k = size - 1; k >= 0; k--) {
+                int i = (int) order[k] & Integer.MAX_VALUE;
+                d.replace(pos[i], pos[i] + len[i], text, offsets[i], offsets[i + 1]);
+            }
+        } catch (RuntimeException | Error e) {
+            d.undo = null;
+            try {
+                journal.rollback(d);
+            } catch (RuntimeException | Error s) {
+                e.addSuppressed(s);
+            }
+            throw e;
+        } finally {
+            journal.endGroup();
+            d.undo = undo;
+            d.batching = null;
+        }
+        int newEl = LineTree.indexOf(d.tree.getByPos(end + add)) + 1;
+        d.changed(sn, start, en - sn, end - start, newEl - sn, end + add - start,
+                event, time, created, deleted, scanned, shifted, realloc, this);
+    }
+
+    /**
+     * 获取按应用的顺序第k个编辑的下标. 仅在提交之后有效
+     *
+     * @param k 应用的顺序
+     * @return 下标
+     */
+    int applied(int k) {
+        return (int) order[size - 1 - k] & Integer.MAX_VALUE;
+    }
+
+    /**
+     * 累计一次替换的统计. 由{@link Document}在批次中的每次替换后调用
+     */
+    void account(int created, int deleted, int scanned, int shifted, int realloc) {
+        this.created += created;
+        this.deleted += deleted;
+        this.scanned += scanned;
+        this.shifted += shifted;
+        this.realloc += realloc;
+    }
+
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 行缓冲的分配器. 缓冲按长度的二的幂分级,每个线程持有独立的空闲列表
+ * <p>
+ * 只有行独占的缓冲才会被归还,共享的缓冲和通过{@link Line#getBuff()}交出的缓冲不会被复用
+ *
+ * @author 823984418@qq.com
+ */
+public final class BufferPool {
+
+    private BufferPool() {
+    }
+
+    /**
+     * 最小的分级. 更短的缓冲不进入池
+     */
+    private static final int MIN_SHIFT = 4;
+
+    private static final int CLASSES = 31 - MIN_SHIFT;
+
+    private static volatile int maxLength = 1 << 16;
+
+    private static volatile long maxRetainedBytes = 4 << 20;
+
+    private static final LongAdder hits = new LongAdder();
+
+    private static final LongAdder misses = new LongAdder();
+
+    private static final LongAdder retained = new LongAdder();
+
+    private static final ThreadLocal<Cache> CACHE = ThreadLocal.withInitial(BufferPool::register);
+
+    /**
+     * 所有线程的空闲列表. 线程结束后其保留的字节在下次注册或统计时扣除
+     */
+    private static final ArrayList<Cache> CACHES = new ArrayList<>();
+
+    /**
+     * 一个线程的空闲列表.
+     */
+    private static final class Cache {
+
+        Cache(Thread owner) {
+            this.owner = owner;
+        }
+
+        final Thread owner;
+
+        final char[][][] chars = new char[CLASSES][][];
+
+        final int[] charCount = new int[CLASSES];
+
+        final byte[][][] bytes = new byte[CLASSES][][];
+
+        final int[] byteCount = new int[CLASSES];
+
+        long retainedBytes;
+
+        boolean reserve(long n) {
+            if (retainedBytes + n > maxRetainedBytes) {
+                return false;
+            }
+            retainedBytes += n;
+            retained.add(n);
+            return true;
+        }
+
+        void free(long n) {
+            retainedBytes -= n;
+            retained.add(-n);
+        }
+
+    }
+
+    private static Cache register() {
+        Cache c = new Cache(Thread.currentThread());
+        synchronized (CACHES) {
+            purge();
+            CACHES.add(c);
+        }
+        return c;
+    }
+
+    /**
+     * 移除已结束的线程的空闲列表并扣除其保留的字节. 调用时持有{@link #CACHES}的锁
+     */
+    private static void purge() {
+        int n = 0;
+        for (int i = 0, size = CACHES.size(); i < size; i++) {
+            Cache c = CACHES.get(i);
+            if (c.owner.isAlive()) {
+                CACHES.set(n++, c);
+            } else {
+                //线程结束之后的读取可以看到它的全部写入
+                retained.add(-c.retainedBytes);
+            }
+        }
+        while (CACHES.size() > n) {
+            CACHES.remove(CACHES.size() - 1);
+        }
+    }
+
+    /**
+     * 容纳指定长度的分级,即不小于长度的二的幂.
+     */
+    private static int ceilClass(int length) {
+        return 32 - Integer.numberOfLeadingZeros(length - 1) - MIN_SHIFT;
+    }
+
+    /**
+     * 缓冲所属的分级,即不大于长度的二的幂.
+     */
+    private static int floorClass(int length) {
+        return 31 - Integer.numberOfLeadingZeros(length) - MIN_SHIFT;
+    }
+
+    /**
+     * 为指定长度的内容选择容量. 按二的幂增长
+     *
+     * @param length 长度
+     * @return 容量
+     */
+    static int capacity(int length) {
+        if (length <= 1 << MIN_SHIFT) {
+            return 1 << MIN_SHIFT;
+        }
+        int c = Integer.highestOneBit(length - 1) << 1;
+        return c > 0 ? c : length;
+    }
+
+    /**
+     * 获取长度不小于{@code length}的缓冲. 池中没有时分配恰好{@code length}长度的缓冲
+     *
+     * @param length 最小长度
+     * @return 缓冲
+     */
+    static char[] chars(int length) {
+        if (length > 1 << MIN_SHIFT && length <= maxLength) {
+            Cache c = CACHE.get();
+            int k = ceilClass(length);
+            int n = c.charCount[k];
+            if (n > 0) {
+                char[][] list = c.chars[k];
+                char[] a = list[--n];
+                list[n] = null;
+                c.charCount[k] = n;
+                c.free(2L * a.length);
+                hits.increment();
+                return a;
+            }
+            misses.increment();
+        }
+        return new char[length];
+    }
+
+    /**
+     * 获取长度不小于{@code length}的Latin-1缓冲.
+     *
+     * @param length 最小长度
+     * @return 缓冲
+     * @see #chars(int)
+     */
+    static byte[] bytes(int length) {
+        if (length > 1 << MIN_SHIFT && length <= maxLength) {
+            Cache c = CACHE.get();
+            int k = ceilClass(length);
+            int n = c.byteCount[k];
+            if (n > 0) {
+                byte[][] list = c.bytes[k];
+                byte[] a = list[--n];
+                list[n] = null;
+                c.byteCount[k] = n;
+                c.free(a.length);
+                hits.increment();
+                return a;
+            }
+            misses.increment();
+        }
+        return new byte[length];
+    }
+
+    /**
+     * 归还缓冲. 调用者此后不得再使用
+     *
+     * @param a 缓冲
+     */
+    static void release(char[] a) {
+        int length = a.length;
+        if (length < 1 << MIN_SHIFT || length > maxLength) {
+            return;
+        }
+        Cache c = CACHE.get();
+        if (!c.reserve(2L * length)) {
+            return;
+        }
+        int k = floorClass(length);
+        char[][] list = c.chars[k];
+        int n = c.charCount[k];
+        if (list == null) {
+            list = c.chars[k] = new char[8][];
+        } else if (n == list.length) {
+            list = c.chars[k] = Arrays.copyOf(list, n * 2);
+        }
+        list[n] = a;
+        c.charCount[k] = n + 1;
+    }
+
+    /**
+     * 归还Latin-1缓冲. 调用者此后不得再使用
+     *
+     * @param a 缓冲
+     */
+    static void release(byte[] a) {
+        int length = a.length;
+        if (length < 1 << MIN_SHIFT || length > maxLength) {
+            return;
+        }
+        Cache c = CACHE.get();
+        if (!c.reserve(length)) {
+            return;
+        }
+        int k = floorClass(length);
+        byte[][] list = c.bytes[k];
+        int n = c.byteCount[k];
+        if (list == null) {
+            list = c.bytes[k] = new byte[8][];
+        } else if (n == list.length) {
+            list = c.bytes[k] = Arrays.copyOf(list, n * 2);
+        }
+        list[n] = a;
+        c.byteCount[k] = n + 1;
+    }
+
+    /**
+     * 清空当前线程的空闲列表.
+     */
+    public static void clear() {
+        Cache c = CACHE.get();
+        for (int k = 0; k < CLASSES; k++) {
+            if (c.chars[k] != null) {
+                Arrays.fill(c.chars[k], null);
+            }
+            if (c.bytes[k] != null) {
+                Arrays.fill(c.bytes[k], null);
+            }
+            c.charCount[k] = 0;
+            c.byteCount[k] = 0;
+        }
+        c.free(c.retainedBytes);
+    }
+
+    /**
+     * 获取进入池的缓冲的最大长度.
+     *
+     * @return 字符数
+     */
+    public static int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * 设置进入池的缓冲的最大长度.
+     *
+     * @param length 字符数
+     */
+    public static void setMaxLength(int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException();
+        }
+        maxLength = length;
+    }
+
+    /**
+     * 获取每个线程保留的最大字节数.
+     *
+     * @return 字节数
+     */
+    public static long getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    /**
+     * 设置每个线程保留的最大字节数. 为0时不保留任何缓冲
+     *
+     * @param bytes 字节数
+     */
+    public static void setMaxRetainedBytes(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException();
+        }
+        maxRetainedBytes = bytes;
+    }
+
+    /**
+     * 获取从池中取得缓冲的次数.
+     *
+     * @return 次数
+     */
+    public static long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * 获取池中没有合适的缓冲而新分配的次数.
+     *
+     * @return 次数
+     */
+    public static long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * 获取存活的线程的空闲列表保留的字节数. 已结束的线程的空闲列表不再计入
+     *
+     * @return 字节数
+     */
+    public static long getRetainedBytes() {
+        synchronized (CACHES) {
+            purge();
+        }
+        return retained.sum();
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 通过一个复用的缓冲将字符编码写入通道. 关闭时结束编码但不关闭通道
+ *
+ * @author 823984418@qq.com
+ */
+final class ChannelWriter extends Writer {
+
+    private final WritableByteChannel channel;
+
+    private final CharsetEncoder encoder;
+
+    private final ByteBuffer out;
+
+    /**
+     * 字符集是否以单个相同的字节表示每个Latin-1字符.
+     */
+    private final boolean latin1;
+
+    /**
+     * 字符集是否以单个相同的字节表示每个ASCII字符.
+     */
+    private final boolean ascii;
+
+    /**
+     * 转换Latin-1内容的缓冲,按需创建.
+     */
+    private char[] chunk;
+
+    /**
+     * 构建一个写入器.
+     *
+     * @param channel 通道
+     * @param charset 字符集
+     */
+    ChannelWriter(WritableByteChannel channel, Charset charset) {
+        this.channel = channel;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.out = ByteBuffer.allocate(1 << 16);
+        this.latin1 = charset.equals(StandardCharsets.ISO_8859_1);
+        this.ascii = latin1 || charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        CharBuffer in = CharBuffer.wrap(cbuf, off, len);
+        while (true) {
+            CoderResult r = encoder.encode(in, out, false);
+            if (r.isOverflow()) {
+                drain();
+            } else if (r.isUnderflow()) {
+                if (in.hasRemaining()) {
+                    //末尾是不完整的代理对,留给下次写入时无法拼接,按替换处理
+                    in.position(in.limit());
+                    encoder.reset();
+                    write(encoder.replacement());
+                }
+                return;
+            } else {
+                r.throwException();
+            }
+        }
+    }
+
+    /**
+     * 写出Latin-1的内容. 字符集能以相同的字节表示时直接复制,否则逐块转换后编码
+     *
+     * @param bytes 内容
+     * @param off 开始
+     * @param len 长度
+     * @throws IOException 写入错误
+     */
+    void writeLatin1(byte[] bytes, int off, int len) throws IOException {
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            int run = i;
+            if (latin1) {
+                run = end;
+            } else if (ascii) {
+                while (run < end && bytes[run] >= 0) {
+                    run++;
+                }
+            }
+            while (i < run) {
+                if (!out.hasRemaining()) {
+                    drain();
+                }
+                int n = Math.min(out.remaining(), run - i);
+                out.put(bytes, i, n);
+                i += n;
+            }
+            if (i < end) {
+                if (chunk == null) {
+                    chunk = new char[1024];
+                }
+                int n = Math.min(chunk.length, end - i);
+                for (int k = 0; k < n; k++) {
+                    chunk[k] = (char) (bytes[i + k] & 0xFF);
+                }
+                write(chunk, 0, n);
+                i += n;
+            }
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        if (out.remaining() < bytes.length) {
+            drain();
+        }
+        out.put(bytes);
+    }
+
+    private void drain() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        CharBuffer empty = CharBuffer.allocate(0);
+        while (encoder.encode(empty, out, true).isOverflow()) {
+            drain();
+        }
+        while (encoder.flush(out).isOverflow()) {
+            drain();
+        }
+        drain();
+    }
+
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+/**
+ * 一行中UTF-16偏移与码点偏移,UTF-8字节偏移和显示列之间的换算.
+ * 每隔{@link #STEP}个字符记录一个检查点,换算只需从最近的检查点扫描
+ * <p>
+ * 代理对在高位代理处计为一个码点和4个字节,不成对的代理计为一个码点和3个字节
+ *
+ * @author 823984418@qq.com
+ */
+final class ColumnIndex {
+
+    /**
+     * 检查点的间隔.
+     */
+    static final int STEP = 64;
+
+    static final int CODE_POINTS = 0;
+
+    static final int UTF8 = 1;
+
+    static final int COLUMNS = 2;
+
+    private ColumnIndex(int tabSize, int[][] tables) {
+        this.tabSize = tabSize;
+        this.tables = tables;
+    }
+
+    /**
+     * 构建时使用的制表符宽度.
+     */
+    final int tabSize;
+
+    /**
+     * 每个检查点之前的码点数,字节数和显示列.
+     */
+    private final int[][] tables;
+
+    /**
+     * 获取行的换算表,必要时构建. 不超过两个检查点间隔的行不需要换算表
+     *
+     * @param line 行
+     * @param tabSize 制表符宽度
+     * @param columns 是否需要显示列,否则可以使用以任意制表符宽度构建的换算表
+     * @return 换算表,可能为{@code null}
+     */
+    static ColumnIndex of(Line line, int tabSize, boolean columns) {
+        if (line.length <= 2 * STEP) {
+            return null;
+        }
+        Line.Extra x = line.extra();
+        ColumnIndex index = x.columns;
+        if (index == null || columns && index.tabSize != tabSize) {
+            index = build(line, tabSize);
+            x.columns = index;
+        }
+        return index;
+    }
+
+    private static ColumnIndex build(Line line, int tabSize) {
+        int length = line.length;
+        int n = length / STEP + 1;
+        int[] cps = new int[n];
+        int[] bytes = new int[n];
+        int[] cols = new int[n];
+        int[] state = new int[3];
+        for (int i = 0; i < length;) {
+            if (i % STEP == 0) {
+                int k = i / STEP;
+                cps[k] = state[CODE_POINTS];
+                bytes[k] = state[UTF8];
+                cols[k] = state[COLUMNS];
+            }
+            int next = step(line, i, state, tabSize);
+            if (next == i + 2 && (i + 1) % STEP == 0) {
+                int k = (i + 1) / STEP;
+                cps[k] = state[CODE_POINTS];
+                bytes[k] = state[UTF8];
+                cols[k] = state[COLUMNS];
+            }
+            i = next;
+        }
+        if (length % STEP == 0) {
+            cps[n - 1] = state[CODE_POINTS];
+            bytes[n - 1] = state[UTF8];
+            cols[n - 1] = state[COLUMNS];
+        }
+        return new ColumnIndex(tabSize, new int[][]{cps, bytes, cols});
+    }
+
+    /**
+     * 经过位于{@code i}的字符或代理对.
+     *
+     * @param line 行
+     * @param i 位置
+     * @param state 码点数,字节数和显示列
+     * @param tabSize 制表符宽度
+     * @return 下一个位置
+     */
+    private static int step(Line line, int i, int[] state, int tabSize) {
+        char c = line.get(i);
+        if (c < 0x80) {
+            state[CODE_POINTS]++;
+            state[UTF8]++;
+            state[COLUMNS] = c == '\t' ? state[COLUMNS] + tabSize - state[COLUMNS] % tabSize : state[COLUMNS] + 1;
+            return i + 1;
+        }
+        if (Character.isLowSurrogate(c) && i > 0 && Character.isHighSurrogate(line.get(i - 1))) {
+            return i + 1;
+        }
+        int cp = c;
+        if (Character.isHighSurrogate(c) && i + 1 < line.length && Character.isLowSurrogate(line.get(i + 1))) {
+            cp = Character.toCodePoint(c, line.get(i + 1));
+            state[UTF8] += 4;
+            state[CODE_POINTS]++;
+            state[COLUMNS] += width(cp);
+            return i + 2;
+        }
+        state[UTF8] += c < 0x800 ? 2 : 3;
+        state[CODE_POINTS]++;
+        state[COLUMNS] += width(cp);
+        return i + 1;
+    }
+
+    /**
+     * 码点的显示宽度. 组合字符为0,东亚宽字符为2
+     *
+     * @param cp 码点
+     * @return 宽度
+     */
+    static int width(int cp) {
+        if (cp < 0x300) {
+            return 1;
+        }
+        int type = Character.getType(cp);
+        if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK || type == Character.FORMAT) {
+            return 0;
+        }
+        if (cp >= 0x1100 && (cp <= 0x115F
+                || cp >= 0x2E80 && cp <= 0xA4CF && cp != 0x303F
+                || cp >= 0xAC00 && cp <= 0xD7A3
+                || cp >= 0xF900 && cp <= 0xFAFF
+                || cp >= 0xFE30 && cp <= 0xFE4F
+                || cp >= 0xFF00 && cp <= 0xFF60
+                || cp >= 0xFFE0 && cp <= 0xFFE6
+                || cp >= 0x1F300 && cp <= 0x1F64F
+                || cp >= 0x1F900 && cp <= 0x1F9FF
+                || cp >= 0x20000 && cp <= 0x3FFFD)) {
+            return 2;
+        }
+        return 1;
+    }
+
+    /**
+     * 换算前缀{@code [0,offset)}的值.
+     *
+     * @param line 行
+     * @param kind 种类
+     * @param offset UTF-16偏移
+     * @param tabSize 制表符宽度
+     * @return 值
+     */
+    static int value(Line line, int kind, int offset, int tabSize) {
+        if (offset < 0 || offset > line.length) {
+            throw new IndexOutOfBoundsException(offset);
+        }
+        if (tabSize <= 0) {
+            throw new IllegalArgumentException("tabSize");
+        }
+        ColumnIndex index = of(line, tabSize, kind == COLUMNS);
+        int[] state = new int[3];
+        int i = 0;
+        if (index != null) {
+            int k = offset / STEP;
+            i = k * STEP;
+            state[CODE_POINTS] = index.tables[CODE_POINTS][k];
+            state[UTF8] = index.tables[UTF8][k];
+            state[COLUMNS] = index.tables[COLUMNS][k];
+        }
+        while (i < offset) {
+            i = step(line, i, state, tabSize);
+        }
+        return state[kind];
+    }
+
+    /**
+     * 查找值不超过{@code value}的最大偏移. 不会位于代理对中间
+     *
+     * @param line 行
+     * @param kind 种类
+     * @param value 值
+     * @param tabSize 制表符宽度
+     * @return UTF-16偏移
+     */
+    static int offset(Line line, int kind, int value, int tabSize) {
+        if (tabSize <= 0) {
+            throw new IllegalArgumentException("tabSize");
+        }
+        if (value < 0) {
+            return 0;
+        }
+        ColumnIndex index = of(line, tabSize, kind == COLUMNS);
+        int[] state = new int[3];
+        int i = 0;
+        if (index != null) {
+            int[] table = index.tables[kind];
+            int lo = 0;
+            int hi = table.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (table[mid] <= value) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            i = lo * STEP;
+            state[CODE_POINTS] = index.tables[CODE_POINTS][lo];
+            state[UTF8] = index.tables[UTF8][lo];
+            state[COLUMNS] = index.tables[COLUMNS][lo];
+        }
+        int[] next = new int[3];
+        int length = line.length;
+        while (i < length) {
+            next[CODE_POINTS] = state[CODE_POINTS];
+            next[UTF8] = state[UTF8];
+            next[COLUMNS] = state[COLUMNS];
+            int j = step(line, i, next, tabSize);
+            if (next[kind] > value) {
+                break;
+            }
+            int[] t = state;
+            state = next;
+            next = t;
+            i = j;
+        }
+        return i;
+    }
+
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 可在多个线程间共享的文档. 修改持有写锁,
+ * 长度,行数和单个字符等短小的读取先以乐观读进行,验证失败时才获取读锁,因此读取之间不互相阻塞
+ * <p>
+ * 共享后不应再直接访问被包装的文档,而应通过此对象或{@link #read(Function)}和{@link #write(Function)}.
+ * 锁不可重入,在持有锁时同步调用的监听器不得再访问此对象
+ *
+ * @author 823984418@qq.com
+ */
+public final class ConcurrentDocument {
+
+    /**
+     * 包装一个文档.
+     *
+     * @param document 文档
+     */
+    public ConcurrentDocument(Document document) {
+        this.document = document;
+        document.sharedAnchors = true;
+    }
+
+    private final Document document;
+
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * 获取长度.
+     *
+     * @return 文档长度
+     */
+    public int getLength() {
+        long stamp = lock.tryOptimisticRead();
+        int n = document.length;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                n = document.length;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 获取行数.
+     *
+     * @return 文档行数
+     */
+    public int getLineCount() {
+        long stamp = lock.tryOptimisticRead();
+        int n = document.lineCount;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                n = document.lineCount;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 获取指定位置的字符.
+     *
+     * @param pos 位置
+     * @return 字符
+     */
+    public char charAt(int pos) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int c = peek(pos);
+                if (lock.validate(stamp) && c >= 0) {
+                    return (char) c;
+                }
+            } catch (RuntimeException e) {
+                //乐观读可能看到修改中的结构,只有验证通过时异常才有效
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return get(pos);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 乐观读取字符. 分页的行返回{@code -1},以免乐观读触发载入
+     */
+    private int peek(int pos) {
+        if (pos < 0 || pos >= document.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        Line l = document.tree.getByPos(pos);
+        int off = pos - LineTree.startOf(l);
+        if (off == l.length) {
+            return '\n';
+        }
+        return l.page != null ? -1 : l.get(off);
+    }
+
+    private char get(int pos) {
+        if (pos < 0 || pos >= document.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        Line l = document.tree.getByPos(pos);
+        int off = pos - LineTree.startOf(l);
+        return off == l.length ? '\n' : l.get(off);
+    }
+
+    /**
+     * 获取范围内的内容.
+     *
+     * @param start 范围开始
+     * @param end 范围结束
+     * @return 内容
+     */
+    public String getText(int start, int end) {
+        long stamp = lock.readLock();
+        try {
+            if (start < 0 || end < start || end > document.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            return new DocumentText(document, start, end).toString();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 获取一行的内容.
+     *
+     * @param lineNumber 行号,从1计数
+     * @return 内容,不包括换行符
+     */
+    public String getLineText(int lineNumber) {
+        long stamp = lock.readLock();
+        try {
+            return document.getLine(lineNumber).toString();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 替换范围内的内容.
+     *
+     * @param start 范围开始
+     * @param end 范围结束
+     * @param text 内容
+     */
+    public void replace(int start, int end, CharSequence text) {
+        char[] cs = text.toString().toCharArray();
+        long stamp = lock.writeLock();
+        try {
+            document.replace(start, end, cs, 0, cs.length);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 以一批编辑修改文档.
+     *
+     * @param edits 登记编辑的过程
+     * @see Document#edit(Consumer)
+     */
+    public void edit(Consumer<? super Batch> edits) {
+        long stamp = lock.writeLock();
+        try {
+            document.edit(edits);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 撤销.
+     *
+     * @return 是否成功
+     */
+    public boolean undo() {
+        long stamp = lock.writeLock();
+        try {
+            return document.undo();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 重做.
+     *
+     * @return 是否成功
+     */
+    public boolean redo() {
+        long stamp = lock.writeLock();
+        try {
+            return document.redo();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 持有读锁访问文档. 过程不得修改文档
+     *
+     * @param <T> 结果的类型
+     * @param reader 过程
+     * @return 结果
+     */
+    public <T> T read(Function<? super Document, ? extends T> reader) {
+        long stamp = lock.readLock();
+        try {
+            return reader.apply(document);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 持有写锁访问文档.
+     *
+     * @param <T> 结果的类型
+     * @param writer 过程
+     * @return 结果
+     */
+    public <T> T write(Function<? super Document, ? extends T> writer) {
+        long stamp = lock.writeLock();
+        try {
+            return writer.apply(document);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 创建一个指向文档头部的游标.
+     *
+     * @param stickyRight 在此处插入内容时是否移动到插入内容之后
+     * @return 游标
+     */
+    public Cursor createCursor(boolean stickyRight) {
+        long stamp = lock.readLock();
+        try {
+            return new Cursor(new Pointer(document, stickyRight));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 线程安全的指针. 游标随文档的修改移动,不同线程的游标可以同时读取和移动,
+     * 但一个游标同时只能被一个线程使用
+     */
+    public final class Cursor {
+
+        private Cursor(Pointer pointer) {
+            this.pointer = pointer;
+        }
+
+        private final Pointer pointer;
+
+        /**
+         * 返回游标后方的字符. 以乐观读进行,位于分页的行时改为读锁
+         *
+         * @return 字符,处于末尾时返回{@code -1}
+         * @see Pointer#readChar()
+         */
+        public int readChar() {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                try {
+                    Line l = pointer.line;
+                    if (l.page == null || pointer.offset == l.length) {
+                        int c = pointer.readChar();
+                        if (lock.validate(stamp)) {
+                            return c;
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    if (lock.validate(stamp)) {
+                        throw e;
+                    }
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return pointer.readChar();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * 获取位置.
+         *
+         * @return 位置
+         */
+        public int getPos() {
+            long stamp = lock.readLock();
+            try {
+                return pointer.getPos();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * 获取行号.
+         *
+         * @return 行号,从1计数
+         */
+        public int getLineNumber() {
+            long stamp = lock.readLock();
+            try {
+                return pointer.getLineNumber();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * 获取行内偏移.
+         *
+         * @return 偏移
+         */
+        public int getOffset() {
+            long stamp = lock.tryOptimisticRead();
+            int offset = pointer.offset;
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    offset = pointer.offset;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return offset;
+        }
+
+        /**
+         * 相对移动. 到边界时停止
+         *
+         * @param size 移动字符数
+         * @return 是否发生边界碰撞
+         */
+        public boolean move(int size) {
+            long stamp = lock.readLock();
+            try {
+                return pointer.move(size);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * 移动所在行并指向行首. 到边界时停止
+         *
+         * @param size 移动行数
+         * @return 是否发生边界碰撞
+         */
+        public boolean lineMove(int size) {
+            long stamp = lock.readLock();
+            try {
+                return pointer.lineMove(size);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * 移动到指定位置.
+         *
+         * @param newPos 新的位置
+         */
+        public void moveTo(int newPos) {
+            long stamp = lock.readLock();
+            try {
+                pointer.moveTo(newPos);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * 移动到指定行指定位置.
+         *
+         * @param lineNumber 行号,从1计数
+         * @param offset 行内偏移
+         */
+        public void moveTo(int lineNumber, int offset) {
+            long stamp = lock.readLock();
+            try {
+                pointer.moveTo(lineNumber, offset);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * 释放此游标.
+         */
+        public void dispose() {
+            long stamp = lock.readLock();
+            try {
+                pointer.dispose();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+/**
+ * 将连续的修改合并为一个覆盖所有修改的范围. 例如在每帧绘制前取出合并的修改
+ * <p>
+ * 合并依赖于修改的顺序,因此应当同步地注册
+ *
+ * @author 823984418@qq.com
+ */
+public final class DamageCollector implements DocumentListener {
+
+    private Document document;
+
+    private boolean dirty;
+
+    private int startLine;
+
+    private int startPos;
+
+    private int removedLines;
+
+    private int removedChars;
+
+    private int insertedLines;
+
+    private int insertedChars;
+
+    @Override
+    public synchronized void changed(DocumentEvent event) {
+        document = event.getDocument();
+        int s = event.getStartPos();
+        int sl = event.getStartLine();
+        if (!dirty) {
+            dirty = true;
+            startLine = sl;
+            startPos = s;
+            removedLines = event.getRemovedLines();
+            removedChars = event.getRemovedChars();
+            insertedLines = event.getInsertedLines();
+            insertedChars = event.getInsertedChars();
+            return;
+        }
+        //已合并的范围在当前文档中的结束位置和行号
+        int end = startPos + insertedChars;
+        int endLine = startLine + insertedLines;
+        //新的修改在当前文档中覆盖的结束位置和行号
+        int e = s + event.getRemovedChars();
+        int el = sl + event.getRemovedLines();
+        int originEnd;
+        int originEndLine;
+        if (end >= e) {
+            originEnd = startPos + removedChars;
+            originEndLine = startLine + removedLines;
+        } else {
+            originEnd = e - (insertedChars - removedChars);
+            originEndLine = el - (insertedLines - removedLines);
+            end = e;
+            endLine = el;
+        }
+        end += event.getInsertedChars() - event.getRemovedChars();
+        endLine += event.getInsertedLines() - event.getRemovedLines();
+        if (s < startPos) {
+            startPos = s;
+            startLine = sl;
+        }
+        removedChars = originEnd - startPos;
+        removedLines = originEndLine - startLine;
+        insertedChars = end - startPos;
+        insertedLines = endLine - startLine;
+    }
+
+    /**
+     * 取出自上次取出以来合并的修改.
+     *
+     * @return 合并的修改,没有修改时返回{@code null}
+     */
+    public synchronized DocumentEvent poll() {
+        if (!dirty) {
+            return null;
+        }
+        dirty = false;
+        return new DocumentEvent(document, startLine, startPos,
+                removedLines, removedChars, insertedLines, insertedChars, null);
+    }
+
+}
@@ -25,16 +25,26 @@
  */
 package net.dxzc.edo;
 
-import java.util.Collections;
-import java.util.Set;
-import java.util.WeakHashMap;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * 一个文档对象.
  *
  * @author 823984418@qq.com
  */
-public class Document {
+public class Document implements Closeable {
 
     /**
      * 在范围中查找字符.
@@ -55,18 +65,144 @@ public class Document {
     }
 
     /**
-     * 构建一个空的文档对象.
+     * 撤销日志默认的内存预算,字节.
+     */
+    public static final long DEFAULT_UNDO_LIMIT = 16 << 20;
+
+    /**
+     * 构建一个空的文档对象. 撤销默认启用,日志只随编辑增长,
+     * 最多占用{@link #DEFAULT_UNDO_LIMIT}字节;不需要撤销时以{@link #setUndoLimit(long)}传入0关闭
      */
     public Document() {
         endLine = headLine = new Line();
+        tree.init(headLine, 1);
         lineCount = 1;
         length = 0;
     }
 
+    /**
+     * 从文件读取一个文档. 文件被映射到内存,并在并行池中分块查找行边界和解码.
+     * 读取的文档处于片段表模式,行直接引用解码后的块
+     *
+     * @param path 文件
+     * @param charset 字符集
+     * @return 文档
+     * @throws IOException 读取错误
+     */
+    public static Document load(Path path, Charset charset) throws IOException {
+        Document document = new Document();
+        DocumentLoader.load(document, path, charset);
+        return document;
+    }
+
+    /**
+     * 以分页的方式打开文件. 打开时只并行地建立行的索引,
+     * 行的内容按块在使用时从文件读取,最近使用的块保留在内存中.
+     * 文档打开期间文件不得被修改,读取共用一个通道,由{@link #close()}关闭
+     * <p>
+     * 块的预算只约束内容,行的索引总是在内存中: 每行仍有一个{@link Line}对象,
+     * 因此堆的占用随行数增长,短行很多的文件节省的内存有限
+     * <p>
+     * 换行符不是单字节的字符集无法分页,此时与{@link #load(Path, Charset)}相同
+     *
+     * @param path 文件
+     * @param charset 字符集
+     * @param cacheBytes 保留的块内容的最大字节数
+     * @return 文档
+     * @throws IOException 读取错误
+     */
+    public static Document page(Path path, Charset charset, long cacheBytes) throws IOException {
+        Document document = new Document();
+        DocumentLoader.page(document, path, charset, cacheBytes);
+        return document;
+    }
+
+    /**
+     * 从{@link EditJournal}的目录恢复文档. 读取最后的检查点并重放其后的日志,
+     * 在第一个不完整的记录处停止. 恢复的文档没有撤销记录
+     *
+     * @param dir 日志的目录
+     * @return 文档
+     * @throws IOException 读取错误,或没有有效的检查点
+     */
+    public static Document recover(Path dir) throws IOException {
+        return EditJournal.recover(dir);
+    }
+
+    /**
+     * 以文件被外部修改后的内容重新载入. 逐行比较新旧内容,只替换不同的行,
+     * 相同的行保留其对象,{@link Line#data}和指针,整个重新载入作为一次编辑撤销.
+     * 读取和比较需要线性时间,缓存的行散列值使未修改的行无需重新计算.
+     * 第一行的对象总是保留,删除开头的行时由它承接其后第一个相同的行的内容
+     * <p>
+     * 分页打开的文档不能重新载入
+     *
+     * @param path 文件
+     * @param charset 字符集
+     * @throws IOException 读取错误
+     */
+    public void reloadFrom(Path path, Charset charset) throws IOException {
+        LineDiff.reload(this, path, charset);
+    }
+
+    /**
+     * 自动换行的布局. 没有布局时为{@code null}
+     */
+    WrapLayout wrap;
+
+    /**
+     * 跟随修改的标记层.
+     */
+    MarkerLayer[] markerLayers = {};
+
+    /**
+     * 分页的缓存. 不是分页打开的文档为{@code null}
+     */
+    Page.Cache pageCache;
+
+    /**
+     * 行上的指针登记是否可能被多个线程同时修改. 为{@code true}时登记在行的监视器下进行,
+     * 由{@link ConcurrentDocument}设置
+     */
+    volatile boolean sharedAnchors;
+
+    /**
+     * 关闭分页读取的通道. 此后读取未载入的块抛出{@link java.io.UncheckedIOException},
+     * 不是分页打开的文档不做任何事
+     *
+     * @throws IOException 关闭错误
+     */
+    @Override
+    public void close() throws IOException {
+        if (pageCache != null) {
+            pageCache.close();
+        }
+    }
+
+    /**
+     * 是否以分页的方式打开.
+     *
+     * @return 是否分页
+     */
+    public boolean isPaged() {
+        return pageCache != null;
+    }
+
+    /**
+     * 获取分页保留在内存中的内容的字节数.
+     *
+     * @return 字节数,不是分页打开的文档返回{@code 0}
+     */
+    public long getResidentPageBytes() {
+        return pageCache == null ? 0 : pageCache.getResidentBytes();
+    }
+
     Line headLine;
 
     Line endLine;
 
+    final LineTree tree = new LineTree();
+
     int lineCount;
 
     int length;
@@ -89,7 +225,440 @@ public class Document {
         return lineCount;
     }
 
-    final Set<Pointer> pointers = Collections.newSetFromMap(new WeakHashMap<>());
+    /**
+     * 获取最长的行的长度. 不包括换行符
+     *
+     * @return 长度
+     */
+    public int getMaxLineLength() {
+        return tree.root.maxLength;
+    }
+
+    /**
+     * 开始维护一个摘要. 需要线性时间计算所有行,之后每次修改只重新计算被修改的行.
+     * 已在维护的摘要不会重复添加
+     *
+     * @param summary 摘要
+     */
+    public void addSummary(Summary<?> summary) {
+        if (indexOf(summary) == -1) {
+            add(summary);
+        }
+    }
+
+    /**
+     * 停止维护一个摘要.
+     *
+     * @param summary 摘要
+     * @return 是否正在维护该摘要
+     */
+    public boolean removeSummary(Summary<?> summary) {
+        int i = indexOf(summary);
+        if (i == -1) {
+            return false;
+        }
+        tree.removeSummary(i);
+        return true;
+    }
+
+    private int add(Summary<?> summary) {
+        if (summary == null) {
+            throw new NullPointerException();
+        }
+        return tree.addSummary(summary);
+    }
+
+    private int indexOf(Summary<?> summary) {
+        Summary<?>[] list = tree.summaries;
+        for (int i = 0; i < list.length; i++) {
+            if (list[i] == summary) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 获取整个文档的摘要. 尚未维护的摘要会先被添加
+     *
+     * @param <S> 摘要的类型
+     * @param summary 摘要
+     * @return 摘要
+     */
+    @SuppressWarnings("unchecked")
+    public <S> S getSummary(Summary<S> summary) {
+        int i = indexOf(summary);
+        if (i == -1) {
+            i = add(summary);
+        }
+        return (S) tree.root.extra.summaries[i << 1 | 1];
+    }
+
+    /**
+     * 获取行号在{@code [fromLine,toLine)}的行的摘要. 尚未维护的摘要会先被添加
+     *
+     * @param <S> 摘要的类型
+     * @param summary 摘要
+     * @param fromLine 开始行号,从1计数
+     * @param toLine 结束行号,不包括
+     * @return 摘要
+     */
+    @SuppressWarnings("unchecked")
+    public <S> S getSummary(Summary<S> summary, int fromLine, int toLine) {
+        if (fromLine < 1 || toLine < fromLine || toLine > lineCount + 1) {
+            throw new IndexOutOfBoundsException();
+        }
+        int i = indexOf(summary);
+        if (i == -1) {
+            i = add(summary);
+        }
+        return (S) tree.summarize(i, fromLine - 1, toLine - 1);
+    }
+
+    /**
+     * 获取以空白字符分隔的单词数.
+     *
+     * @return 单词数
+     * @see Summary#WORDS
+     */
+    public long getWordCount() {
+        return getSummary(Summary.WORDS);
+    }
+
+    /**
+     * 获取码点数. 包括换行符
+     *
+     * @return 码点数
+     * @see Summary#CODE_POINTS
+     */
+    public long getCodePointCount() {
+        return getSummary(Summary.CODE_POINTS) + lineCount - 1;
+    }
+
+    /**
+     * 按行号获取行对象.
+     *
+     * @param lineNumber 行号,从1计数
+     * @return 行
+     */
+    public Line getLine(int lineNumber) {
+        if (lineNumber < 1 || lineNumber > lineCount) {
+            throw new IndexOutOfBoundsException();
+        }
+        return tree.get(lineNumber - 1);
+    }
+
+    /**
+     * 片段表模式下插入内容的追加缓冲. 非片段表模式时为{@code null}
+     */
+    PieceBuffer pieces;
+
+    /**
+     * 是否处于片段表模式.
+     *
+     * @return 是否处于片段表模式
+     */
+    public boolean isPieceTable() {
+        return pieces != null;
+    }
+
+    /**
+     * 设置片段表模式. 此模式下插入的多行内容只被复制一次到只追加的缓冲中,
+     * 新的行直接引用缓冲中的片段,直到被修改时才复制为独占的缓冲
+     *
+     * @param pieceTable 是否启用
+     */
+    public void setPieceTable(boolean pieceTable) {
+        if (pieceTable != (pieces != null)) {
+            pieces = pieceTable ? new PieceBuffer() : null;
+        }
+    }
+
+    /**
+     * 撤销日志. 预算为0时为{@code null}
+     */
+    UndoJournal undo = new UndoJournal(DEFAULT_UNDO_LIMIT);
+
+    /**
+     * 撤销上一次编辑. 连续的输入或删除合并为一次编辑
+     *
+     * @return 是否有可以撤销的编辑
+     */
+    public boolean undo() {
+        UndoJournal j = undo;
+        if (j == null) {
+            return false;
+        }
+        undo = null;
+        try {
+            return j.undo(this);
+        } finally {
+            undo = j;
+        }
+    }
+
+    /**
+     * 重做上一次撤销的编辑.
+     *
+     * @return 是否有可以重做的编辑
+     */
+    public boolean redo() {
+        UndoJournal j = undo;
+        if (j == null) {
+            return false;
+        }
+        undo = null;
+        try {
+            return j.redo(this);
+        } finally {
+            undo = j;
+        }
+    }
+
+    /**
+     * 是否有可以撤销的编辑.
+     *
+     * @return 是否可以撤销
+     */
+    public boolean canUndo() {
+        return undo != null && undo.cursor > 0;
+    }
+
+    /**
+     * 是否有可以重做的编辑.
+     *
+     * @return 是否可以重做
+     */
+    public boolean canRedo() {
+        return undo != null && undo.cursor < undo.count;
+    }
+
+    /**
+     * 结束连续输入或删除的合并. 此后的编辑将单独撤销
+     */
+    public void breakUndo() {
+        if (undo != null) {
+            undo.breakMerge();
+        }
+    }
+
+    /**
+     * 清空撤销和重做的记录.
+     */
+    public void clearUndo() {
+        if (undo != null) {
+            undo.clear();
+        }
+    }
+
+    /**
+     * 获取撤销日志的内存预算.
+     *
+     * @return 字节数
+     */
+    public long getUndoLimit() {
+        return undo == null ? 0 : undo.limit;
+    }
+
+    /**
+     * 设置撤销日志的内存预算. 超出预算时丢弃最早的记录,为0时不再记录
+     *
+     * @param bytes 字节数
+     */
+    public void setUndoLimit(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException();
+        }
+        if (bytes == 0) {
+            undo = null;
+        } else if (undo == null) {
+            undo = new UndoJournal(bytes);
+        } else {
+            undo.setLimit(bytes);
+        }
+    }
+
+    /**
+     * 快照索引. 在第一次获取快照时构建,此后随编辑更新
+     */
+    SnapshotIndex snapshots;
+
+    /**
+     * 获取文档当前内容的不可变快照. 快照与文档共享结构,
+     * 第一次调用需要线性时间,此后每次只需常数时间,编辑的代价增加对数时间
+     *
+     * @return 快照
+     */
+    public Snapshot snapshot() {
+        if (snapshots == null) {
+            snapshots = new SnapshotIndex(this);
+        }
+        return snapshots.snapshot();
+    }
+
+    private static final DocumentListener[] NO_LISTENERS = {};
+
+    private static final Executor[] NO_EXECUTORS = {};
+
+    private DocumentListener[] listeners = NO_LISTENERS;
+
+    private Executor[] executors = NO_EXECUTORS;
+
+    /**
+     * 添加监听器. 监听器在修改完成后按添加的顺序在修改线程中被调用
+     *
+     * @param listener 监听器
+     */
+    public void addListener(DocumentListener listener) {
+        addListener(listener, null);
+    }
+
+    /**
+     * 添加异步的监听器. 修改线程只提交任务而不等待,
+     * 因此监听器收到修改的顺序取决于执行器
+     *
+     * @param listener 监听器
+     * @param executor 执行器,为{@code null}时同步调用
+     */
+    public void addListener(DocumentListener listener, Executor executor) {
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+        int n = listeners.length;
+        DocumentListener[] ls = Arrays.copyOf(listeners, n + 1);
+        Executor[] es = Arrays.copyOf(executors, n + 1);
+        ls[n] = listener;
+        es[n] = executor;
+        listeners = ls;
+        executors = es;
+    }
+
+    /**
+     * 移除监听器.
+     *
+     * @param listener 监听器
+     * @return 是否移除
+     */
+    public boolean removeListener(DocumentListener listener) {
+        int n = listeners.length;
+        for (int i = 0; i < n; i++) {
+            if (listeners[i] == listener) {
+                DocumentListener[] ls = new DocumentListener[n - 1];
+                Executor[] es = new Executor[n - 1];
+                System.arraycopy(listeners, 0, ls, 0, i);
+                System.arraycopy(listeners, i + 1, ls, i, n - i - 1);
+                System.arraycopy(executors, 0, es, 0, i);
+                System.arraycopy(executors, i + 1, es, i, n - i - 1);
+                listeners = ls;
+                executors = es;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void fire(DocumentEvent event) {
+        DocumentListener[] ls = listeners;
+        Executor[] es = executors;
+        for (int i = 0; i < ls.length; i++) {
+            DocumentListener l = ls[i];
+            if (es[i] == null) {
+                l.changed(event);
+            } else {
+                es[i].execute(() -> l.changed(event));
+            }
+        }
+    }
+
+    /**
+     * 累计统计. 未启用时为{@code null}
+     */
+    private DocumentMetrics metrics;
+
+    /**
+     * 启用或停用累计统计. 停用时不产生任何开销,启用时每次替换增加两次计时
+     *
+     * @param enabled 是否启用
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        if (!enabled) {
+            metrics = null;
+        } else if (metrics == null) {
+            metrics = new DocumentMetrics();
+        }
+    }
+
+    /**
+     * 获取累计统计.
+     *
+     * @return 统计,未启用时返回{@code null}
+     */
+    public DocumentMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 修改计数. 指针以此判断缓存的行号和位置是否有效
+     */
+    int modCount;
+
+    private Pointer[] scratch = new Pointer[16];
+
+    /**
+     * 正在提交的批次. 不为{@code null}时替换不通知监听器,也不单独计入统计,
+     * 由批次结束时合并为一次通知
+     */
+    Batch batching;
+
+    /**
+     * 收集从{@code first}到{@code last}的各行上登记的指针.
+     *
+     * @param first 开始行
+     * @param last 结束行
+     * @return 指针数
+     */
+    private int gather(Line first, Line last) {
+        int n = 0;
+        for (Line l = first;; l = l.next) {
+            Line.Extra x = l.extra;
+            for (int i = 0; x != null && i < x.anchorCount; i++) {
+                Pointer p = x.anchors[i].get();
+                if (p != null) {
+                    if (n == scratch.length) {
+                        scratch = Arrays.copyOf(scratch, n * 2);
+                    }
+                    scratch[n++] = p;
+                }
+            }
+            if (l == last) {
+                return n;
+            }
+        }
+    }
+
+    /**
+     * 复制从指定行和偏移开始的若干字符,跨行时写入换行符.
+     *
+     * @param line 开始行
+     * @param offset 开始偏移
+     * @param size 字符数
+     * @param dst 目标
+     * @param at 目标开始
+     */
+    static void copy(Line line, int offset, int size, char[] dst, int at) {
+        while (size > 0) {
+            int n = Math.min(size, line.length - offset);
+            line.getChars(offset, offset + n, dst, at);
+            at += n;
+            size -= n;
+            if (size > 0) {
+                dst[at++] = '\n';
+                size--;
+                line = line.next;
+                offset = 0;
+            }
+        }
+    }
 
     /**
      * 替换范围内的内容.
@@ -101,122 +670,265 @@ public class Document {
      * @param textEnd 缓冲结束
      */
     public void replace(Pointer start, Pointer end, char[] text, int begin, int textEnd) {
-        if (start.document != this || end.document != this) {
+        checkRange(start, end);
+        if (begin < 0 || begin > textEnd || textEnd > text.length) {
             throw new IndexOutOfBoundsException();
         }
-        if (start.compareTo(end) > 0) {
+        replace(start.line, start.offset, start.getLineNumber(), start.getPos(),
+                end.line, end.offset, end.getLineNumber(), end.getPos(),
+                text, begin, textEnd, start, end);
+    }
+
+    /**
+     * 以一批编辑修改文档. 批次中的位置都相对于修改前的文档,
+     * 提交时从文档尾部向前一次应用,并作为一次编辑撤销.
+     * 监听器只收到一次覆盖所有编辑的范围的通知.
+     * 所有编辑在应用前检查,应用中途失败时已应用的编辑被撤回
+     *
+     * @param edits 登记编辑的过程
+     */
+    public void edit(Consumer<? super Batch> edits) {
+        Batch batch = new Batch(this);
+        edits.accept(batch);
+        batch.commit();
+    }
+
+    /**
+     * 按位置替换范围内的内容. 不需要构建指针
+     *
+     * @param startPos 范围开始
+     * @param endPos 范围结束
+     * @param text 缓冲
+     * @param begin 缓冲开始
+     * @param textEnd 缓冲结束
+     */
+    void replace(int startPos, int endPos, char[] text, int begin, int textEnd) {
+        if (startPos < 0 || endPos < startPos || endPos > length) {
             throw new IndexOutOfBoundsException();
         }
-        int size = textEnd - begin;
-        if (begin < 0 || size < 0 || textEnd > text.length) {
+        if (begin < 0 || begin > textEnd || textEnd > text.length) {
             throw new IndexOutOfBoundsException();
         }
-        int add = (textEnd - begin) - (end.pos - start.pos);
+        Line sl = tree.getByPos(startPos);
+        int sls = LineTree.startOf(sl);
+        Line el = endPos - sls <= sl.length ? sl : tree.getByPos(endPos);
+        int els = el == sl ? sls : LineTree.startOf(el);
+        int sn = LineTree.indexOf(sl) + 1;
+        int en = el == sl ? sn : LineTree.indexOf(el) + 1;
+        replace(sl, startPos - sls, sn, startPos, el, endPos - els, en, endPos,
+                text, begin, textEnd, null, null);
+    }
+
+    /**
+     * 替换的实现. 范围以行,行内偏移,行号和位置给出
+     *
+     * @param sl 开始行
+     * @param so 开始偏移
+     * @param sn 开始行号
+     * @param startPos 开始位置
+     * @param el 结束行
+     * @param eo 结束偏移
+     * @param en 结束行号
+     * @param endPos 结束位置
+     * @param text 缓冲
+     * @param begin 缓冲开始
+     * @param textEnd 缓冲结束
+     * @param start 作为范围开始的指针,可以为{@code null}
+     * @param end 作为范围结束的指针,可以为{@code null}
+     */
+    private void replace(Line sl, int so, int sn, int startPos, Line el, int eo, int en, int endPos,
+            char[] text, int begin, int textEnd, Pointer start, Pointer end) {
+        ReplaceEvent event = new ReplaceEvent();
+        event.begin();
+        long time = metrics != null ? System.nanoTime() : 0;
+        if (undo != null) {
+            undo.record(sl, so, startPos, endPos - startPos, text, begin, textEnd);
+        }
+        int size = textEnd - begin;
+        int add = size - (endPos - startPos);
+        int moved = gather(sl, el);
         length += add;
-        int oldEL = end.lineNumber;
-        int newEl = oldEL;
+        int newEl;
         int newEndOff;
         Line newEndLine;
+        Line after;
+        Line chain = null;
+        Line chainEnd = null;
+        int insert = 0;
+        int realloc = 0;
         int fn = find(text, begin, textEnd, '\n');
-        if (start.line == end.line) {
-            if (fn == -1) {//同一行无换行符
-                start.line.replace(start.offset, end.offset, text, begin, textEnd);
-                newEndOff = start.offset + size;
-                newEndLine = start.line;
-            } else {//同一行有换行符
-                int first = fn;
-                int last = fn + 1;
-                Line lastLine = start.line;
-                Line wiLine = start.line.next;
-                while ((fn = find(text, last, textEnd, '\n')) != -1) {
-                    Line newLine = new Line();
-                    lineCount++;
-                    lastLine.next = newLine;
-                    newLine.previous = lastLine;
-                    newEl++;
-                    newLine.replace(0, 0, text, last, fn);
-                    lastLine = newLine;
-                    last = fn + 1;
+        if (fn == -1) {//无换行符
+            if (sl == el) {
+                realloc += sl.replace(so, eo, text, begin, textEnd) ? 1 : 0;
+                after = sl.next;
+            } else {
+                realloc += sl.replace(so, sl.length, text, begin, textEnd) ? 1 : 0;
+                realloc += sl.replace(so + size, so + size, el, eo, el.length) ? 1 : 0;
+                after = el.next;
+            }
+            tree.resize(sl);
+            newEl = sn;
+            newEndOff = so + size;
+            newEndLine = sl;
+        } else {//有换行符
+            int first = fn;
+            Line lastLine = null;
+            int last = fn + 1;
+            char[] piece = null;
+            int shift = 0;
+            if (pieces != null) {
+                int lastFn = textEnd - 1;
+                while (text[lastFn] != '\n') {
+                    lastFn--;
                 }
-                Line eLine = new Line();
-                lineCount++;
-                eLine.previous = lastLine;
-                eLine.next = wiLine;
-                lastLine.next = eLine;
-                if (wiLine != null) {
-                    wiLine.previous = eLine;
-                } else {
-                    endLine = eLine;
+                if (lastFn > first) {
+                    shift = pieces.append(text, last, lastFn) - last;
+                    piece = pieces.array;
                 }
-                newEl++;
-                eLine.replace(0, 0, text, last, textEnd);
-                eLine.replace(textEnd - last, textEnd - last, start.line.buff, end.offset, end.offset - start.offset);
-                start.line.replace(start.offset, start.line.length, text, 0, first);
-                newEndOff = textEnd - last;
-                newEndLine = eLine;
             }
-        } else {
-            if (fn == -1) {//不同一行无换行符
-                start.line.replace(start.offset, start.line.length, text, begin, textEnd);
-                start.line.replace(start.offset + size, start.offset + size, end.line.buff, end.offset, end.line.length);
-                start.line.next = end.line.next;
-                if (end.line.next != null) {
-                    end.line.next.previous = start.line;
+            while ((fn = find(text, last, textEnd, '\n')) != -1) {
+                Line newLine;
+                if (piece != null) {
+                    newLine = Line.span(piece, last + shift, fn + shift);
                 } else {
-                    endLine = start.line;
+                    newLine = new Line();
+                    realloc += newLine.replace(0, 0, text, last, fn) ? 1 : 0;
                 }
-                newEl--;
-                newEndOff = start.offset + size;
-                newEndLine = end.line;
-                lineCount -= end.lineNumber - start.lineNumber;
-            } else {//不同一行有换行符
-                start.line.replace(start.offset, start.line.length, text, begin, fn);
-                int last = fn + 1;
-                Line lastLine = start.line;
-                while ((fn = find(text, last, textEnd, '\n')) != -1) {
-                    Line newLine = new Line();
-                    lineCount++;
+                if (lastLine == null) {
+                    chain = newLine;
+                } else {
                     lastLine.next = newLine;
                     newLine.previous = lastLine;
-                    newEl++;
-                    newLine.replace(0, 0, text, last, fn);
-                    lastLine = newLine;
-                    last = fn + 1;
                 }
-                lastLine.next = end.line;
-                end.line.previous = lastLine;
-                end.line.replace(0, end.offset, text, last, textEnd);
-                newEndOff = textEnd - last;
-                newEndLine = end.line;
-                lineCount -= end.lineNumber - start.lineNumber;
+                lastLine = newLine;
+                insert++;
+                last = fn + 1;
             }
+            if (sl == el) {
+                newEndLine = new Line();
+                realloc += newEndLine.replace(0, 0, text, last, textEnd) ? 1 : 0;
+                realloc += newEndLine.replace(textEnd - last, textEnd - last, sl, eo, sl.length) ? 1 : 0;
+                if (lastLine == null) {
+                    chain = newEndLine;
+                } else {
+                    lastLine.next = newEndLine;
+                    newEndLine.previous = lastLine;
+                }
+                chainEnd = newEndLine;
+                insert++;
+                after = sl.next;
+            } else {
+                newEndLine = el;
+                realloc += el.replace(0, eo, text, last, textEnd) ? 1 : 0;
+                tree.resize(el);
+                chainEnd = lastLine;
+                after = el;
+            }
+            realloc += sl.replace(so, sl.length, text, begin, first) ? 1 : 0;
+            tree.resize(sl);
+            newEl = sn + insert + (sl == el ? 0 : 1);
+            newEndOff = textEnd - last;
+        }
+        int remove = (after == el ? en - 1 : en) - sn;
+        Line tail = sl;
+        if (chain != null) {
+            sl.next = chain;
+            chain.previous = sl;
+            tail = chainEnd;
+        }
+        tail.next = after;
+        if (after != null) {
+            after.previous = tail;
+        } else {
+            endLine = tail;
         }
-        int addOff = newEndOff - end.offset;
-        int addEL = newEl - newEl;
-        int endPos = end.pos + add;
-        for (Pointer p : pointers) {
+        tree.replace(sn, remove, chain, insert);
+        lineCount += insert - remove;
+        if (snapshots != null) {
+            snapshots.replace(sn - 1, en - sn + 1, sl, newEl - sn + 1);
+        }
+        int addOff = newEndOff - eo;
+        int mc = ++modCount;
+        int shifted = 0;
+        for (int i = 0; i < moved; i++) {
+            Pointer p = scratch[i];
+            scratch[i] = null;
             if (p == start || p == end) {
                 continue;
-            } else if (start.compareTo(p) >= 0) {
+            } else if (p.line == sl && (p.offset < so || p.offset == so && !p.stickyRight)) {
                 continue;
-            } else if (end.compareTo(p) >= 0) {
-                p.lineNumber = newEl;
-                p.offset = newEndOff;
-                p.line = newEndLine;
-                p.pos = endPos;
+            } else if (p.line == el && p.offset > eo) {
+                p.offset += addOff;
             } else {
-                p.lineNumber += addEL;
-                p.pos += add;
-                if (end.lineComparetTo(p) == 0) {
-                    p.offset += addOff;
-                    p.line = newEndLine;
-                }
+                p.offset = newEndOff;
             }
+            p.setLine(newEndLine);
+            shifted++;
+        }
+        if (start != null) {
+            start.lineNumber = sn;
+            start.pos = startPos;
+            start.stamp = mc;
+        }
+        if (end != null) {
+            end.setLine(newEndLine);
+            end.lineNumber = newEl;
+            end.offset = newEndOff;
+            end.pos = endPos + add;
+            end.stamp = mc;
+        }
+        if (wrap != null) {
+            wrap.update(sl, newEl - sn);
+        }
+        for (MarkerLayer layer : markerLayers) {
+            layer.update(startPos, endPos - startPos, size);
+        }
+        if (batching != null) {
+            batching.account(insert, remove, moved, shifted, realloc);
+            return;
+        }
+        changed(sn, startPos, en - sn, endPos - startPos, newEl - sn, size,
+                event, time, insert, remove, moved, shifted, realloc, null);
+    }
+
+    /**
+     * 通知一次替换并记录统计.
+     *
+     * @param sn 开始行号
+     * @param startPos 开始位置
+     * @param removedLines 删除的换行符数
+     * @param removedChars 删除的字符数
+     * @param insertedLines 插入的换行符数
+     * @param insertedChars 插入的字符数
+     * @param event 已开始的JFR事件
+     * @param time 开始的时间,未启用统计时忽略
+     * @param created 创建的行数
+     * @param deleted 移除的行数
+     * @param scanned 检查的指针数
+     * @param shifted 移动的指针数
+     * @param realloc 重新分配的缓冲数
+     * @param batch 合并为此次替换的批次,不是批次时为{@code null}
+     */
+    void changed(int sn, int startPos, int removedLines, int removedChars, int insertedLines, int insertedChars,
+            ReplaceEvent event, long time, int created, int deleted, int scanned, int shifted, int realloc, Batch batch) {
+        //先结束计时,监听器的耗时不计入替换的延迟
+        if (metrics != null) {
+            metrics.record(System.nanoTime() - time, insertedChars, removedChars, created, deleted, scanned, shifted, realloc);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.insertedChars = insertedChars;
+            event.removedChars = removedChars;
+            event.linesCreated = created;
+            event.linesRemoved = deleted;
+            event.pointersScanned = scanned;
+            event.pointersMoved = shifted;
+            event.reallocations = realloc;
+            event.commit();
+        }
+        if (listeners.length != 0) {
+            fire(new DocumentEvent(this, sn, startPos, removedLines, removedChars, insertedLines, insertedChars, batch));
         }
-        end.lineNumber = newEl;
-        end.offset = newEndOff;
-        end.line = newEndLine;
-        end.pos = endPos;
     }
 
     /**
@@ -232,15 +944,273 @@ public class Document {
         replace(start, end, buff, 0, buff.length);
     }
 
+    /**
+     * 按行遍历文档. 每行以不复制内容的只读视图给出,不包括换行符.
+     * 流按行号范围分割,可以并行处理.
+     * 文档被修改后视图失效,遍历将抛出{@link java.util.ConcurrentModificationException}
+     *
+     * @return 各行内容的流
+     */
+    public Stream<CharSequence> lines() {
+        return StreamSupport.stream(new LineSpliterator.Lines(this, 0, lineCount), false);
+    }
+
+    /**
+     * 按行遍历行号在{@code [fromLine,toLine)}的行.
+     *
+     * @param fromLine 开始行号,从1计数
+     * @param toLine 结束行号,不包括
+     * @return 各行内容的流
+     * @see #lines()
+     */
+    public Stream<CharSequence> lines(int fromLine, int toLine) {
+        if (fromLine < 1 || toLine < fromLine || toLine > lineCount + 1) {
+            throw new IndexOutOfBoundsException();
+        }
+        return StreamSupport.stream(new LineSpliterator.Lines(this, fromLine - 1, toLine - 1), false);
+    }
+
+    /**
+     * 按块遍历整个文档的流. 各块依次连接即为文档的内容,流按行号范围分割,可以并行处理.
+     * Latin-1存储的行转换到每个分割器独有的缓冲中,块在同一分割器给出下一块之前有效,
+     * 需要保留时应当复制.
+     * 文档被修改后遍历将抛出{@link java.util.ConcurrentModificationException}
+     *
+     * @return 各块的流
+     * @see #forEachChunk(Pointer, Pointer, Consumer)
+     */
+    public Stream<CharBuffer> chunks() {
+        return StreamSupport.stream(new LineSpliterator.Chunks(this, 0, lineCount), false);
+    }
+
+    /**
+     * 按块遍历整个文档.
+     *
+     * @param action 处理每块的过程
+     * @see #forEachChunk(Pointer, Pointer, Consumer)
+     */
+    public void forEachChunk(Consumer<? super CharBuffer> action) {
+        forEachChunk(headLine, 0, endLine, endLine.length, action);
+    }
+
+    /**
+     * 按块遍历范围内的内容. 各块依次连接即为范围内的内容,换行符单独成块.
+     * {@code char}存储的行直接给出其缓冲的只读视图,Latin-1存储的行分段转换到复用的缓冲中.
+     * 块只在回调期间有效
+     *
+     * @param start 范围开始
+     * @param end 范围结束
+     * @param action 处理每块的过程
+     */
+    public void forEachChunk(Pointer start, Pointer end, Consumer<? super CharBuffer> action) {
+        checkRange(start, end);
+        forEachChunk(start.line, start.offset, end.line, end.offset, action);
+    }
+
+    private void forEachChunk(Line sl, int so, Line el, int eo, Consumer<? super CharBuffer> action) {
+        int mc = modCount;
+        CharBuffer newline = CharBuffer.wrap("\n");
+        char[] scratch = null;
+        try {
+            for (Line line = sl;; line = line.next) {
+                int from = line == sl ? so : 0;
+                int to = line == el ? eo : line.length;
+                if (to > from) {
+                    Object a = line.array();
+                    if (a instanceof char[]) {
+                        action.accept(CharBuffer.wrap((char[]) a, line.base + from, to - from).asReadOnlyBuffer());
+                    } else {
+                        byte[] b = (byte[]) a;
+                        if (scratch == null) {
+                            scratch = BufferPool.chars(CHUNK);
+                        }
+                        for (int i = line.base + from, e = line.base + to; i < e;) {
+                            int n = Math.min(e - i, scratch.length);
+                            for (int k = 0; k < n; k++) {
+                                scratch[k] = (char) (b[i + k] & 0xFF);
+                            }
+                            action.accept(CharBuffer.wrap(scratch, 0, n));
+                            i += n;
+                        }
+                    }
+                }
+                if (mc != modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (line == el) {
+                    return;
+                }
+                newline.clear();
+                action.accept(newline);
+            }
+        } finally {
+            if (scratch != null) {
+                BufferPool.release(scratch);
+            }
+        }
+    }
+
+    /**
+     * 转换Latin-1内容时每块的最大长度.
+     */
+    private static final int CHUNK = 8192;
+
+    /**
+     * 获取整个文档的字符序列视图. 视图不复制内容,顺序访问每个字符为常数时间,
+     * {@link CharSequence#subSequence(int, int)}同样不复制.
+     * 文档被修改后视图失效,访问将抛出{@link java.util.ConcurrentModificationException}
+     *
+     * @return 字符序列
+     */
+    public CharSequence asCharSequence() {
+        return new DocumentText(this, 0, length);
+    }
+
+    /**
+     * 获取范围内的字符序列视图.
+     *
+     * @param start 范围开始
+     * @param end 范围结束
+     * @return 字符序列
+     * @see #asCharSequence()
+     */
+    public CharSequence asCharSequence(Pointer start, Pointer end) {
+        checkRange(start, end);
+        return new DocumentText(this, start.getPos(), end.getPos());
+    }
+
+    /**
+     * 将文档内容写入字符流. 逐行写出,不构建完整的字符串
+     *
+     * @param writer 字符流
+     * @throws IOException 写入错误
+     */
+    public void writeTo(Writer writer) throws IOException {
+        write(headLine, 0, endLine, endLine.length, writer);
+    }
+
+    /**
+     * 将范围内的内容写入字符流.
+     *
+     * @param start 范围开始
+     * @param end 范围结束
+     * @param writer 字符流
+     * @throws IOException 写入错误
+     */
+    public void writeTo(Pointer start, Pointer end, Writer writer) throws IOException {
+        checkRange(start, end);
+        write(start.line, start.offset, end.line, end.offset, writer);
+    }
+
+    /**
+     * 将文档内容编码写入通道. 编码使用一个复用的缓冲,写入后不关闭通道
+     *
+     * @param channel 通道
+     * @param charset 字符集
+     * @throws IOException 写入错误
+     */
+    public void writeTo(WritableByteChannel channel, Charset charset) throws IOException {
+        ChannelWriter writer = new ChannelWriter(channel, charset);
+        writeTo(writer);
+        writer.close();
+    }
+
+    /**
+     * 将范围内的内容编码写入通道.
+     *
+     * @param start 范围开始
+     * @param end 范围结束
+     * @param channel 通道
+     * @param charset 字符集
+     * @throws IOException 写入错误
+     */
+    public void writeTo(Pointer start, Pointer end, WritableByteChannel channel, Charset charset) throws IOException {
+        ChannelWriter writer = new ChannelWriter(channel, charset);
+        writeTo(start, end, writer);
+        writer.close();
+    }
+
+    /**
+     * 检查范围是否属于此文档且有序.
+     *
+     * @param start 范围开始
+     * @param end 范围结束
+     */
+    private void checkRange(Pointer start, Pointer end) {
+        if (start.document != this || end.document != this) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (start.line == null || end.line == null) {
+            throw new IllegalStateException();
+        }
+        if (start.compareTo(end) > 0) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    private static void write(Line sl, int so, Line el, int eo, Writer writer) throws IOException {
+        char[] chunk = BufferPool.chars(CHUNK);
+        try {
+            for (Line line = sl;; line = line.next) {
+                int from = line == sl ? so : 0;
+                if (line == el) {
+                    write(line, from, eo, writer, chunk);
+                    return;
+                }
+                write(line, from, line.length, writer, chunk);
+                writer.write('\n');
+            }
+        } finally {
+            BufferPool.release(chunk);
+        }
+    }
+
+    /**
+     * 写出一行的部分内容. Latin-1的内容直接交给{@link ChannelWriter},
+     * 否则分块转换到{@code chunk}中写出,不创建字符串
+     */
+    private static void write(Line line, int from, int to, Writer writer, char[] chunk) throws IOException {
+        Object a = line.array();
+        if (a instanceof char[]) {
+            writer.write((char[]) a, line.base + from, to - from);
+        } else if (writer instanceof ChannelWriter) {
+            ((ChannelWriter) writer).writeLatin1((byte[]) a, line.base + from, to - from);
+        } else {
+            byte[] b = (byte[]) a;
+            int end = line.base + to;
+            for (int i = line.base + from; i < end;) {
+                int n = Math.min(chunk.length, end - i);
+                for (int k = 0; k < n; k++) {
+                    chunk[k] = (char) (b[i + k] & 0xFF);
+                }
+                writer.write(chunk, 0, n);
+                i += n;
+            }
+        }
+    }
+
+    private static void append(Line line, StringBuilder sb) {
+        Object a = line.array();
+        if (a instanceof char[]) {
+            sb.append((char[]) a, line.base, line.length);
+        } else {
+            byte[] b = (byte[]) a;
+            int end = line.base + line.length;
+            for (int i = line.base; i < end; i++) {
+                sb.append((char) (b[i] & 0xFF));
+            }
+        }
+    }
+
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = new StringBuilder(length);
         for (Line line = headLine; line != null; line = line.next) {
-            sb.append(line.buff, 0, line.length);
-            sb.append("\n");
+            if (line != headLine) {
+                sb.append('\n');
+            }
+            append(line, sb);
         }
-        int len = sb.length();
-        sb.delete(len - 1, len);
         return sb.toString();
     }
 
@@ -255,7 +1225,7 @@ public class Document {
         for (Line line = headLine; line != null; line = line.next) {
             sb.append(i++);
             sb.append(":\t");
-            sb.append(line.buff, 0, line.length);
+            append(line, sb);
             sb.append("\n");
         }
         int len = sb.length();
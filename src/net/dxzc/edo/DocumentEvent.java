@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+/**
+ * 一次修改. 描述以{@link #getStartPos()}开始的一段内容被替换,
+ * 删除和插入的行数即其中换行符的个数
+ *
+ * @author 823984418@qq.com
+ */
+public final class DocumentEvent {
+
+    DocumentEvent(Document document, int startLine, int startPos,
+            int removedLines, int removedChars, int insertedLines, int insertedChars, Batch batch) {
+        this.document = document;
+        this.startLine = startLine;
+        this.startPos = startPos;
+        this.removedLines = removedLines;
+        this.removedChars = removedChars;
+        this.insertedLines = insertedLines;
+        this.insertedChars = insertedChars;
+        this.batch = batch;
+    }
+
+    private final Document document;
+
+    private final int startLine;
+
+    private final int startPos;
+
+    private final int removedLines;
+
+    private final int removedChars;
+
+    private final int insertedLines;
+
+    private final int insertedChars;
+
+    /**
+     * 合并为此修改的批次. 不是批次时为{@code null}
+     */
+    final Batch batch;
+
+    /**
+     * 获取被修改的文档.
+     *
+     * @return 文档
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * 获取修改开始的行号. 从1计数
+     *
+     * @return 行号
+     */
+    public int getStartLine() {
+        return startLine;
+    }
+
+    /**
+     * 获取修改开始的位置.
+     *
+     * @return 位置
+     */
+    public int getStartPos() {
+        return startPos;
+    }
+
+    /**
+     * 获取删除的行数.
+     *
+     * @return 删除的换行符个数
+     */
+    public int getRemovedLines() {
+        return removedLines;
+    }
+
+    /**
+     * 获取删除的字符数.
+     *
+     * @return 字符数
+     */
+    public int getRemovedChars() {
+        return removedChars;
+    }
+
+    /**
+     * 获取插入的行数.
+     *
+     * @return 插入的换行符个数
+     */
+    public int getInsertedLines() {
+        return insertedLines;
+    }
+
+    /**
+     * 获取插入的字符数.
+     *
+     * @return 字符数
+     */
+    public int getInsertedChars() {
+        return insertedChars;
+    }
+
+    @Override
+    public String toString() {
+        return startLine + ":" + startPos + " -" + removedLines + "/" + removedChars
+                + " +" + insertedLines + "/" + insertedChars;
+    }
+
+}
@@ -0,0 +1,457 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 从文件读取文档. 对于换行符编码为单字节{@code '\n'}的字符集,
+ * 将文件映射到内存并按行边界切分为块,在并行池中解码. 行直接引用解码后的块
+ *
+ * @author 823984418@qq.com
+ */
+final class DocumentLoader {
+
+    /**
+     * 每块的字节数.
+     */
+    static final int CHUNK = 1 << 22;
+
+    /**
+     * 每块在结束位置之后额外映射的字节数,用于找到最后一行的结尾.
+     * 行更长时映射范围逐次加倍
+     */
+    static final int SLACK = 1 << 16;
+
+    private DocumentLoader() {
+    }
+
+    /**
+     * 以文件内容填充一个空的文档.
+     *
+     * @param document 文档
+     * @param path 文件
+     * @param charset 字符集
+     * @throws IOException 读取错误
+     */
+    static void load(Document document, Path path, Charset charset) throws IOException {
+        load(document, path, charset, null);
+    }
+
+    /**
+     * 以分页的方式打开文件. 只建立行的索引,内容在使用时按块载入
+     * <p>
+     * 换行符不是单字节的字符集无法按块定位,此时完整地载入
+     *
+     * @param document 文档
+     * @param path 文件
+     * @param charset 字符集
+     * @param cacheBytes 保留的块内容的最大字节数
+     * @throws IOException 读取错误
+     */
+    static void page(Document document, Path path, Charset charset, long cacheBytes) throws IOException {
+        if (!paged(charset)) {
+            load(document, path, charset, null);
+            return;
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            Page.Cache cache = new Page.Cache(channel, path, charset, cacheBytes);
+            load(document, path, charset, cache);
+            document.pageCache = cache;
+        } catch (IOException | RuntimeException | Error e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static boolean paged(Charset charset) {
+        return Arrays.equals("\n".getBytes(charset), new byte[]{'\n'});
+    }
+
+    private static void load(Document document, Path path, Charset charset, Page.Cache cache) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return;
+            }
+            //每个字符至多编码为maxBytesPerChar字节,据此在解码前拒绝必然过大的文件
+            if (size / charset.newEncoder().maxBytesPerChar() > Integer.MAX_VALUE) {
+                throw new IOException("file too large: " + path);
+            }
+            Piece piece;
+            if (paged(charset)) {
+                try {
+                    piece = ForkJoinPool.commonPool().invoke(new Task(channel, charset, cache, size, 0, size));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            } else {
+                piece = sequential(channel, charset);
+            }
+            if (piece.chars + piece.count - 1 > Integer.MAX_VALUE) {
+                throw new IOException("file too large: " + path);
+            }
+            document.setPieceTable(true);
+            document.headLine = piece.head;
+            document.endLine = piece.tail;
+            document.tree.init(piece.head, piece.count);
+            document.lineCount = piece.count;
+            document.length = (int) (piece.chars + piece.count - 1);
+        }
+    }
+
+    /**
+     * 一段连续的行.
+     */
+    private static final class Piece {
+
+        Line head;
+
+        Line tail;
+
+        int count;
+
+        long chars;
+
+        void add(Line line) {
+            if (tail == null) {
+                head = line;
+            } else {
+                tail.next = line;
+                line.previous = tail;
+            }
+            tail = line;
+            count++;
+            chars += line.length;
+        }
+
+        Piece concat(Piece o) {
+            if (o.head == null) {
+                return this;
+            }
+            if (head == null) {
+                return o;
+            }
+            tail.next = o.head;
+            o.head.previous = tail;
+            tail = o.tail;
+            count += o.count;
+            chars += o.chars;
+            return this;
+        }
+
+    }
+
+    /**
+     * 解码一个字节范围内开始的所有行.
+     */
+    private static final class Task extends RecursiveTask<Piece> {
+
+        private static final long serialVersionUID = 1L;
+
+        final FileChannel channel;
+
+        final Charset charset;
+
+        /**
+         * 分页的缓存. 为{@code null}时解码全部内容
+         */
+        final Page.Cache cache;
+
+        final long size;
+
+        final long from;
+
+        final long to;
+
+        Task(FileChannel channel, Charset charset, Page.Cache cache, long size, long from, long to) {
+            this.channel = channel;
+            this.charset = charset;
+            this.cache = cache;
+            this.size = size;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Piece compute() {
+            if (to - from > CHUNK) {
+                long mid = from + (to - from) / 2;
+                Task l = new Task(channel, charset, cache, size, from, mid);
+                Task r = new Task(channel, charset, cache, size, mid, to);
+                l.fork();
+                Piece rp = r.compute();
+                return l.join().concat(rp);
+            }
+            try {
+                return decode();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * 查找不小于{@code at}的第一个行首.
+         *
+         * @param map 映射
+         * @param base 映射的起始位置
+         * @param at 位置
+         * @return 行首位置,找不到时返回映射的结束位置
+         */
+        private long lineStart(MappedByteBuffer map, long base, long at) {
+            if (at == 0 || at >= size) {
+                return Math.min(at, size);
+            }
+            int limit = map.limit();
+            for (int i = (int) (at - 1 - base); i < limit; i++) {
+                if (map.get(i) == '\n') {
+                    return base + i + 1;
+                }
+            }
+            return base + limit;
+        }
+
+        private Piece decode() throws IOException {
+            Piece piece = new Piece();
+            long base = Math.max(0, from - 1);
+            long span = Math.min(size, to + SLACK) - base;
+            MappedByteBuffer map;
+            long start;
+            long end;
+            while (true) {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, base, span);
+                start = lineStart(map, base, from);
+                if (start >= to) {
+                    return piece;
+                }
+                end = lineStart(map, base, to);
+                long mapped = base + span;
+                if (end < mapped || mapped == size) {
+                    break;
+                }
+                if (span == Integer.MAX_VALUE) {
+                    throw new IOException("line too long");
+                }
+                span = Math.min(Math.min(size - base, span * 2), Integer.MAX_VALUE);
+            }
+            ByteBuffer bytes = map.duplicate();
+            bytes.position((int) (start - base));
+            bytes.limit((int) (end - base));
+            if (cache != null) {
+                return index(bytes, start, end);
+            }
+            if (direct(bytes)) {
+                byte[] text = new byte[bytes.remaining()];
+                bytes.get(text);
+                int last = 0;
+                for (int i = 0; i < text.length; i++) {
+                    if (text[i] == '\n') {
+                        piece.add(Line.span(text, last, i));
+                        last = i + 1;
+                    }
+                }
+                if (end == size) {
+                    piece.add(Line.span(text, last, text.length));
+                }
+                return piece;
+            }
+            CharBuffer chars;
+            try {
+                chars = decoder(charset).decode(bytes);
+            } catch (CharacterCodingException e) {
+                throw new IOException(e);
+            }
+            char[] text = chars.array();
+            int off = chars.arrayOffset();
+            int limit = off + chars.limit();
+            if (Line.isLatin1(text, off, limit)) {
+                byte[] latin = new byte[limit - off];
+                for (int i = off; i < limit; i++) {
+                    latin[i - off] = (byte) text[i];
+                }
+                int last = 0;
+                for (int i = 0; i < latin.length; i++) {
+                    if (latin[i] == '\n') {
+                        piece.add(Line.span(latin, last, i));
+                        last = i + 1;
+                    }
+                }
+                if (end == size) {
+                    piece.add(Line.span(latin, last, latin.length));
+                }
+                return piece;
+            }
+            int last = off;
+            for (int i = off; i < limit; i++) {
+                if (text[i] == '\n') {
+                    piece.add(Line.span(text, last, i));
+                    last = i + 1;
+                }
+            }
+            if (end == size) {
+                piece.add(Line.span(text, last, limit));
+            }
+            return piece;
+        }
+
+        /**
+         * 为一块建立行的索引,只在块不能直接使用时解码以确定行的长度.
+         *
+         * @param bytes 块的字节
+         * @param start 块在文件中的开始位置
+         * @param end 块在文件中的结束位置
+         * @return 块中的行
+         * @throws IOException 解码错误
+         */
+        private Piece index(ByteBuffer bytes, long start, long end) throws IOException {
+            Piece piece = new Piece();
+            boolean latin1 = direct(bytes);
+            Page page = new Page(cache, start, end, latin1);
+            if (latin1) {
+                int p = bytes.position();
+                int n = bytes.limit();
+                int last = p;
+                for (int i = p; i < n; i++) {
+                    if (bytes.get(i) == '\n') {
+                        piece.add(Line.paged(page, last - p, i - last));
+                        last = i + 1;
+                    }
+                }
+                if (end == size) {
+                    piece.add(Line.paged(page, last - p, n - last));
+                }
+            } else {
+                CharBuffer chars;
+                try {
+                    chars = decoder(charset).decode(bytes);
+                } catch (CharacterCodingException e) {
+                    throw new IOException(e);
+                }
+                int n = chars.limit();
+                int last = 0;
+                for (int i = 0; i < n; i++) {
+                    if (chars.get(i) == '\n') {
+                        piece.add(Line.paged(page, last, i - last));
+                        last = i + 1;
+                    }
+                }
+                if (end == size) {
+                    piece.add(Line.paged(page, last, n - last));
+                }
+            }
+            return piece;
+        }
+
+        /**
+         * 字节是否可以不经解码直接作为Latin-1内容.
+         *
+         * @param bytes 字节
+         * @return 是否可以直接使用
+         */
+        private boolean direct(ByteBuffer bytes) {
+            if (charset.equals(StandardCharsets.ISO_8859_1)) {
+                return true;
+            }
+            if (!charset.equals(StandardCharsets.UTF_8) && !charset.equals(StandardCharsets.US_ASCII)) {
+                return false;
+            }
+            for (int i = bytes.position(), n = bytes.limit(); i < n; i++) {
+                if (bytes.get(i) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    static CharsetDecoder decoder(Charset charset) {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * 顺序解码,用于换行符不是单字节的字符集.
+     *
+     * @param channel 文件
+     * @param charset 字符集
+     * @return 所有行
+     * @throws IOException 读取错误
+     */
+    private static Piece sequential(FileChannel channel, Charset charset) throws IOException {
+        Piece piece = new Piece();
+        Reader reader = Channels.newReader(channel, decoder(charset), -1);
+        char[] buff = new char[8192];
+        char[] line = new char[256];
+        int length = 0;
+        int n;
+        while ((n = reader.read(buff)) != -1) {
+            int last = 0;
+            for (int i = 0; i < n; i++) {
+                if (buff[i] == '\n') {
+                    line = append(line, length, buff, last, i);
+                    length += i - last;
+                    piece.add(Line.of(line, 0, length));
+                    length = 0;
+                    last = i + 1;
+                }
+            }
+            line = append(line, length, buff, last, n);
+            length += n - last;
+        }
+        piece.add(Line.of(line, 0, length));
+        return piece;
+    }
+
+    private static char[] append(char[] line, int length, char[] text, int begin, int textEnd) {
+        int size = textEnd - begin;
+        if (length + size > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, length + size));
+        }
+        System.arraycopy(text, begin, line, length, size);
+        return line;
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+/**
+ * 文档修改的累计统计. 只在修改线程中更新,其他线程读取的值可能滞后
+ *
+ * @author 823984418@qq.com
+ * @see Document#setMetricsEnabled(boolean)
+ */
+public final class DocumentMetrics {
+
+    DocumentMetrics() {
+    }
+
+    private long replaces;
+
+    private long nanos;
+
+    private long maxNanos;
+
+    private long insertedChars;
+
+    private long removedChars;
+
+    private long linesCreated;
+
+    private long linesRemoved;
+
+    private long pointersScanned;
+
+    private long pointersMoved;
+
+    private long reallocations;
+
+    void record(long time, int inserted, int removed, int created, int deleted,
+            int scanned, int moved, int realloc) {
+        replaces++;
+        nanos += time;
+        if (time > maxNanos) {
+            maxNanos = time;
+        }
+        insertedChars += inserted;
+        removedChars += removed;
+        linesCreated += created;
+        linesRemoved += deleted;
+        pointersScanned += scanned;
+        pointersMoved += moved;
+        reallocations += realloc;
+    }
+
+    /**
+     * 清零所有统计.
+     */
+    public void reset() {
+        replaces = 0;
+        nanos = 0;
+        maxNanos = 0;
+        insertedChars = 0;
+        removedChars = 0;
+        linesCreated = 0;
+        linesRemoved = 0;
+        pointersScanned = 0;
+        pointersMoved = 0;
+        reallocations = 0;
+    }
+
+    /**
+     * 获取替换的次数.
+     *
+     * @return 次数
+     */
+    public long getReplaces() {
+        return replaces;
+    }
+
+    /**
+     * 获取替换的总耗时.
+     *
+     * @return 纳秒
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * 获取单次替换的最长耗时.
+     *
+     * @return 纳秒
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * 获取插入的字符数.
+     *
+     * @return 字符数
+     */
+    public long getInsertedChars() {
+        return insertedChars;
+    }
+
+    /**
+     * 获取删除的字符数.
+     *
+     * @return 字符数
+     */
+    public long getRemovedChars() {
+        return removedChars;
+    }
+
+    /**
+     * 获取新建的行数.
+     *
+     * @return 行数
+     */
+    public long getLinesCreated() {
+        return linesCreated;
+    }
+
+    /**
+     * 获取移除的行数.
+     *
+     * @return 行数
+     */
+    public long getLinesRemoved() {
+        return linesRemoved;
+    }
+
+    /**
+     * 获取修正时检查的指针数.
+     *
+     * @return 指针数
+     */
+    public long getPointersScanned() {
+        return pointersScanned;
+    }
+
+    /**
+     * 获取修正时实际移动的指针数.
+     *
+     * @return 指针数
+     */
+    public long getPointersMoved() {
+        return pointersMoved;
+    }
+
+    /**
+     * 获取行缓冲重新分配的次数.
+     *
+     * @return 次数
+     */
+    public long getReallocations() {
+        return reallocations;
+    }
+
+    @Override
+    public String toString() {
+        return "replaces=" + replaces + " nanos=" + nanos + " maxNanos=" + maxNanos
+                + " inserted=" + insertedChars + " removed=" + removedChars
+                + " linesCreated=" + linesCreated + " linesRemoved=" + linesRemoved
+                + " pointersScanned=" + pointersScanned + " pointersMoved=" + pointersMoved
+                + " reallocations=" + reallocations;
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.util.ConcurrentModificationException;
+
+/**
+ * 文档中一个范围的字符序列视图. 不复制内容,缓存最近访问的行使顺序访问为常数时间.
+ * 视图创建后文档被修改时,访问将抛出{@link ConcurrentModificationException}
+ *
+ * @author 823984418@qq.com
+ */
+final class DocumentText implements CharSequence {
+
+    DocumentText(Document document, int start, int end) {
+        this.document = document;
+        this.start = start;
+        this.end = end;
+        this.modCount = document.modCount;
+    }
+
+    private final Document document;
+
+    private final int start;
+
+    private final int end;
+
+    private final int modCount;
+
+    private Line line;
+
+    private int lineStart;
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= end - start) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (document.modCount != modCount) {
+            throw new ConcurrentModificationException();
+        }
+        int pos = start + index;
+        Line l = line;
+        int offset = pos - lineStart;
+        if (l == null || offset < 0 || offset > l.length) {
+            if (l != null && offset == l.length + 1 && l.next != null) {
+                l = l.next;
+                lineStart += offset;
+            } else {
+                l = document.tree.getByPos(pos);
+                lineStart = LineTree.startOf(l);
+            }
+            line = l;
+            offset = pos - lineStart;
+        }
+        return offset == l.length ? '\n' : l.get(offset);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to < from || to > end - start) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (document.modCount != modCount) {
+            throw new ConcurrentModificationException();
+        }
+        return new DocumentText(document, start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+        if (document.modCount != modCount) {
+            throw new ConcurrentModificationException();
+        }
+        char[] text = new char[end - start];
+        Line l = document.tree.getByPos(start);
+        Document.copy(l, start - LineTree.startOf(l), text.length, text, 0);
+        return new String(text);
+    }
+
+}
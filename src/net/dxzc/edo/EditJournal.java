@@ -0,0 +1,699 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 只追加的编辑日志. 每次修改以紧凑的记录追加到目录中的日志段,
+ * 日志足够长时在后台把文档快照写为检查点并删除旧的日志段,因此持久化的代价只与修改量相关
+ * <p>
+ * 目录中有一个检查点{@code checkpoint}和若干编号递增的日志段{@code journal-<n>},
+ * 检查点记录其后第一个日志段的编号. 记录带有校验,恢复时在第一个不完整的记录处停止
+ *
+ * @author 823984418@qq.com
+ * @see Document#recover(Path)
+ */
+public final class EditJournal implements Closeable {
+
+    /**
+     * 写入磁盘的策略.
+     */
+    public enum Sync {
+
+        /**
+         * 每次修改都写入并同步到磁盘后才返回.
+         */
+        ALWAYS,
+        /**
+         * 修改先缓冲,每隔一段时间写入并同步到磁盘.
+         */
+        INTERVAL,
+        /**
+         * 修改先缓冲,每隔一段时间写入,由操作系统决定何时同步到磁盘.
+         */
+        NONE
+
+    }
+
+    private static final int MAGIC = 0x45444F43;
+
+    private static final String CHECKPOINT = "checkpoint";
+
+    private static final String SEGMENT = "journal-";
+
+    /**
+     * 缓冲记录的字节数.
+     */
+    private static final int BUFFER = 1 << 16;
+
+    /**
+     * 所有日志共用的定时写入线程.
+     */
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "edo-journal");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * 所有日志共用的压缩线程. 与定时写入分开,使写检查点不会推迟其他日志的同步
+     */
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "edo-journal-compact");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * 在文档上开始记录. 目录中原有的日志被清除,并同步写入当前内容作为第一个检查点
+     *
+     * @param document 文档
+     * @param dir 目录
+     * @param sync 写入磁盘的策略
+     * @param intervalMillis 缓冲的策略下写入的间隔
+     * @return 日志
+     * @throws IOException 写入错误
+     */
+    public static EditJournal open(Document document, Path dir, Sync sync, long intervalMillis) throws IOException {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException();
+        }
+        Files.createDirectories(dir);
+        for (Path p : files(dir)) {
+            Files.delete(p);
+        }
+        EditJournal journal = new EditJournal(document, dir, sync);
+        writeCheckpoint(dir, journal.take(), 1);
+        journal.segment(1);
+        if (sync != Sync.ALWAYS) {
+            journal.ticker = EXECUTOR.scheduleWithFixedDelay(journal::tick, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+        document.addListener(journal.listener);
+        return journal;
+    }
+
+    private EditJournal(Document document, Path dir, Sync sync) {
+        this.document = document;
+        this.dir = dir;
+        this.sync = sync;
+    }
+
+    private final Document document;
+
+    private final Path dir;
+
+    private final Sync sync;
+
+    /**
+     * 定时写入的任务. 策略为{@link Sync#ALWAYS}时为{@code null}
+     */
+    private Future<?> ticker;
+
+    /**
+     * 最近一次压缩的任务.
+     */
+    private Future<?> compaction;
+
+    private final DocumentListener listener = this::changed;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+
+    private final CRC32 crc = new CRC32();
+
+    private FileChannel channel;
+
+    /**
+     * 当前日志段的编号.
+     */
+    private int generation;
+
+    /**
+     * 自上一个检查点以来的日志字节数.
+     */
+    private long bytes;
+
+    private long checkpointBytes = 4 << 20;
+
+    private boolean compacting;
+
+    private boolean closed;
+
+    /**
+     * 写入失败的原因. 在{@link #flush()}和{@link #close()}时抛出
+     */
+    private IOException failure;
+
+    /**
+     * 获取自上一个检查点以来的日志字节数.
+     *
+     * @return 字节数
+     */
+    public synchronized long getJournalBytes() {
+        return bytes;
+    }
+
+    /**
+     * 设置开始压缩的日志字节数. 实际的阈值不小于文档长度,使压缩的代价均摊到每个记录的字节上为常数
+     *
+     * @param checkpointBytes 字节数
+     */
+    public synchronized void setCheckpointBytes(long checkpointBytes) {
+        if (checkpointBytes <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.checkpointBytes = checkpointBytes;
+    }
+
+    private void changed(DocumentEvent event) {
+        if (event.batch != null) {
+            log(event.batch, 0, 0, null, 0);
+            return;
+        }
+        int start = event.getStartPos();
+        int n = event.getInsertedChars();
+        char[] text = BufferPool.chars(n);
+        try {
+            if (n > 0) {
+                Line l = document.tree.getByPos(start);
+                Document.copy(l, start - LineTree.startOf(l), n, text, 0);
+            }
+            log(null, start, event.getRemovedChars(), text, n);
+        } finally {
+            BufferPool.release(text);
+        }
+    }
+
+    /**
+     * 追加一次修改的记录. 批次的每个编辑按应用的顺序各为一个记录,使记录的字节数只与编辑相关
+     *
+     * @param batch 批次,不是批次时为{@code null}
+     */
+    private void log(Batch batch, int start, int removed, char[] text, int n) {
+        boolean full;
+        synchronized (this) {
+            if (failure != null) {
+                return;
+            }
+            try {
+                if (batch == null) {
+                    append(start, removed, text, 0, n);
+                } else {
+                    for (int k = 0; k < batch.size(); k++) {
+                        int i = batch.applied(k);
+                        append(batch.pos[i], batch.len[i], batch.text, batch.offsets[i], batch.offsets[i + 1]);
+                    }
+                }
+                if (sync == Sync.ALWAYS) {
+                    drain();
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                failure = e;
+                return;
+            }
+            full = !compacting && bytes > Math.max(checkpointBytes, document.length);
+        }
+        if (full) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * 编码一个记录: 长度,位置,删除的长度,插入的长度,插入的字符,校验.
+     */
+    private void append(int start, int removed, char[] text, int begin, int end) throws IOException {
+        int n = end - begin;
+        int size = varSize(start) + varSize(removed) + varSize(n);
+        for (int i = begin; i < end; i++) {
+            size += varSize(text[i]);
+        }
+        crc.reset();
+        room(20);
+        putVar(buffer, size);
+        int mark = buffer.position();
+        putVar(buffer, start);
+        putVar(buffer, removed);
+        putVar(buffer, n);
+        for (int i = begin; i < end; i++) {
+            if (buffer.remaining() < 3) {
+                crc.update(buffer.array(), mark, buffer.position() - mark);
+                drain();
+                mark = 0;
+            }
+            putVar(buffer, text[i]);
+        }
+        crc.update(buffer.array(), mark, buffer.position() - mark);
+        room(4);
+        buffer.putInt((int) crc.getValue());
+        bytes += varSize(size) + size + 4;
+    }
+
+    private void room(int n) throws IOException {
+        if (buffer.remaining() < n) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private synchronized void tick() {
+        if (failure != null || closed) {
+            return;
+        }
+        try {
+            drain();
+            if (sync == Sync.INTERVAL) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * 写入缓冲的记录并同步到磁盘.
+     *
+     * @throws IOException 写入错误
+     */
+    public synchronized void flush() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        drain();
+        channel.force(false);
+    }
+
+    /**
+     * 开始压缩. 切换到新的日志段,并在后台把当前内容写为检查点,完成后删除旧的日志段.
+     * 必须在修改文档的线程中调用,已有压缩在进行时不做任何事
+     */
+    public void checkpoint() {
+        int next;
+        synchronized (this) {
+            if (compacting || closed || failure != null) {
+                return;
+            }
+            try {
+                drain();
+                channel.force(false);
+                channel.close();
+                segment(generation + 1);
+            } catch (IOException e) {
+                failure = e;
+                return;
+            }
+            compacting = true;
+            bytes = 0;
+            next = generation;
+        }
+        Snapshot snapshot = take();
+        Future<?> f = COMPACTOR.submit(() -> compact(snapshot, next));
+        synchronized (this) {
+            compaction = f;
+        }
+    }
+
+    /**
+     * 获取快照. 快照索引在开始记录时建立并一直保留,此后每次修改增加对数时间,
+     * 检查点只需常数时间,不会在修改文档的线程中停顿
+     */
+    private Snapshot take() {
+        return document.snapshot();
+    }
+
+    private void compact(Snapshot snapshot, int next) {
+        try {
+            writeCheckpoint(dir, snapshot, next);
+            for (Path p : files(dir)) {
+                int g = generation(p);
+                if (g != -1 && g < next) {
+                    Files.delete(p);
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+            }
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    private void segment(int g) throws IOException {
+        channel = FileChannel.open(dir.resolve(SEGMENT + g),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        generation = g;
+    }
+
+    /**
+     * 停止记录,写入缓冲的记录并等待后台的压缩完成.
+     *
+     * @throws IOException 写入错误
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        document.removeListener(listener);
+        if (ticker != null) {
+            ticker.cancel(false);
+        }
+        Future<?> f;
+        synchronized (this) {
+            f = compaction;
+        }
+        if (f != null) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                //压缩的错误已记录在failure中
+            }
+        }
+        synchronized (this) {
+            try {
+                if (failure == null) {
+                    drain();
+                    channel.force(false);
+                }
+            } finally {
+                channel.close();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private static ArrayList<Path> files(Path dir) throws IOException {
+        ArrayList<Path> list = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                if (name.equals(CHECKPOINT) || name.equals(CHECKPOINT + ".tmp") || generation(p) != -1) {
+                    list.add(p);
+                }
+            }
+        }
+        return list;
+    }
+
+    private static int generation(Path p) {
+        String name = p.getFileName().toString();
+        if (!name.startsWith(SEGMENT)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(SEGMENT.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 把快照写为检查点. 先写入临时文件并同步,再原子地替换原有的检查点
+     */
+    private static void writeCheckpoint(Path dir, Snapshot snapshot, int next) throws IOException {
+        Path tmp = dir.resolve(CHECKPOINT + ".tmp");
+        try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckedOutputStream out = new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(fc), BUFFER), new CRC32());
+            ByteBuffer head = ByteBuffer.allocate(12);
+            head.putInt(MAGIC).putInt(next).putInt(snapshot.getLength());
+            out.write(head.array());
+            ByteBuffer block = ByteBuffer.allocate(BUFFER);
+            //按顺序遍历持久化树堆的各行
+            ArrayList<Snapshot.Node> stack = new ArrayList<>();
+            boolean first = true;
+            Snapshot.Node t = snapshot.root;
+            while (t != null || !stack.isEmpty()) {
+                while (t != null) {
+                    stack.add(t);
+                    t = t.left;
+                }
+                t = stack.remove(stack.size() - 1);
+                if (!first) {
+                    putChar(out, block, '\n');
+                }
+                first = false;
+                if (t.length > 0) {
+                    Object a = t.array();
+                    int b = t.base;
+                    if (a instanceof byte[]) {
+                        byte[] bs = (byte[]) a;
+                        for (int i = b; i < b + t.length; i++) {
+                            putChar(out, block, (char) (bs[i] & 0xFF));
+                        }
+                    } else {
+                        char[] cs = (char[]) a;
+                        for (int i = b; i < b + t.length; i++) {
+                            putChar(out, block, cs[i]);
+                        }
+                    }
+                }
+                t = t.right;
+            }
+            out.write(block.array(), 0, block.position());
+            long sum = out.getChecksum().getValue();
+            out.write(ByteBuffer.allocate(4).putInt((int) sum).array());
+            out.flush();
+            fc.force(true);
+        }
+        Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void putChar(OutputStream out, ByteBuffer block, char c) throws IOException {
+        if (block.remaining() < 3) {
+            out.write(block.array(), 0, block.position());
+            block.clear();
+        }
+        putVar(block, c);
+    }
+
+    /**
+     * 从检查点和其后的日志段恢复文档. 在第一个不完整或校验失败的记录处停止
+     *
+     * @param dir 目录
+     * @return 文档
+     * @throws IOException 读取错误,或没有有效的检查点
+     */
+    static Document recover(Path dir) throws IOException {
+        Path cp = dir.resolve(CHECKPOINT);
+        if (!Files.exists(cp)) {
+            throw new NoSuchFileException(cp.toString());
+        }
+        Document document = new Document();
+        //重放时不记录撤销,避免复制检查点和各记录的内容
+        long limit = document.getUndoLimit();
+        document.setUndoLimit(0);
+        int next = readCheckpoint(cp, document);
+        ArrayList<Integer> gens = new ArrayList<>();
+        for (Path p : files(dir)) {
+            int g = generation(p);
+            if (g >= next) {
+                gens.add(g);
+            }
+        }
+        Collections.sort(gens);
+        int expect = next;
+        for (int g : gens) {
+            if (g != expect++ || !replay(document, dir.resolve(SEGMENT + g))) {
+                break;
+            }
+        }
+        document.setUndoLimit(limit);
+        return document;
+    }
+
+    /**
+     * 把检查点的内容读入空的文档.
+     *
+     * @return 其后第一个日志段的编号
+     */
+    private static int readCheckpoint(Path cp, Document document) throws IOException {
+        char[] text;
+        int next;
+        try (CheckedInputStream in = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(cp), BUFFER), new CRC32())) {
+            if (readInt(in) != MAGIC) {
+                throw new IOException("not a checkpoint");
+            }
+            next = readInt(in);
+            int length = readInt(in);
+            if (length < 0) {
+                throw new IOException("bad checkpoint");
+            }
+            text = new char[length];
+            for (int i = 0; i < length; i++) {
+                text[i] = (char) getVar(in);
+            }
+            long sum = in.getChecksum().getValue();
+            if (readInt(in) != (int) sum) {
+                throw new IOException("checkpoint checksum mismatch");
+            }
+        }
+        document.replace(0, 0, text, 0, text.length);
+        return next;
+    }
+
+    /**
+     * 重放一个日志段.
+     *
+     * @return 是否完整
+     */
+    private static boolean replay(Document document, Path segment) throws IOException {
+        long remain = Files.size(segment);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(segment), BUFFER)) {
+            CRC32 crc = new CRC32();
+            while (remain > 0) {
+                int size;
+                byte[] body;
+                int check;
+                try {
+                    size = getVar(in);
+                    if (size < 0 || size + 4L > remain) {
+                        return false;
+                    }
+                    body = in.readNBytes(size);
+                    check = readInt(in);
+                } catch (EOFException e) {
+                    return false;
+                }
+                crc.reset();
+                crc.update(body);
+                if (check != (int) crc.getValue()) {
+                    return false;
+                }
+                remain -= varSize(size) + size + 4;
+                ByteBuffer b = ByteBuffer.wrap(body);
+                int start = getVar(b);
+                int removed = getVar(b);
+                int n = getVar(b);
+                if (start < 0 || removed < 0 || n < 0 || start > document.length - removed) {
+                    return false;
+                }
+                char[] text = new char[n];
+                for (int i = 0; i < n; i++) {
+                    text[i] = (char) getVar(b);
+                }
+                document.replace(start, start + removed, text, 0, n);
+            }
+        }
+        return true;
+    }
+
+    private static int varSize(int v) {
+        return v < 0x80 ? 1 : v < 0x4000 ? 2 : v < 0x200000 ? 3 : v < 0x10000000 ? 4 : 5;
+    }
+
+    private static void putVar(ByteBuffer b, int v) {
+        while ((v & ~0x7F) != 0) {
+            b.put((byte) (v & 0x7F | 0x80));
+            v >>>= 7;
+        }
+        b.put((byte) v);
+    }
+
+    private static int getVar(ByteBuffer b) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!b.hasRemaining()) {
+                throw new EOFException();
+            }
+            int x = b.get();
+            v |= (x & 0x7F) << shift;
+            if (x >= 0) {
+                return v;
+            }
+        }
+        throw new IOException("bad varint");
+    }
+
+    private static int getVar(InputStream in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int x = in.read();
+            if (x < 0) {
+                throw new EOFException();
+            }
+            v |= (x & 0x7F) << shift;
+            if (x < 0x80) {
+                return v;
+            }
+        }
+        throw new IOException("bad varint");
+    }
+
+    private static int readInt(InputStream in) throws IOException {
+        byte[] b = in.readNBytes(4);
+        if (b.length < 4) {
+            throw new EOFException();
+        }
+        return ByteBuffer.wrap(b).getInt();
+    }
+
+}
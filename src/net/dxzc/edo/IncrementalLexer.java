@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+/**
+ * 增量的词法分析. 每行结束时的状态保存在{@link Line#data}中,
+ * 修改后从第一个受影响的行开始重新分析,越过修改范围后某行结束时的状态与原先相同即停止
+ *
+ * @author 823984418@qq.com
+ * @param <S> 状态的类型
+ */
+public final class IncrementalLexer<S> {
+
+    /**
+     * 检查时间的间隔行数.
+     */
+    private static final int CHECK_LINES = 64;
+
+    /**
+     * 创建并监听文档. 整个文档被标记为需要分析
+     *
+     * @param document 文档
+     * @param lexer 分析器
+     */
+    public IncrementalLexer(Document document, Lexer<S> lexer) {
+        this.document = document;
+        this.lexer = lexer;
+        first = new Pointer(document);
+        last = new Pointer(document);
+        last.moveToEnd();
+        dirty = true;
+        document.addListener(listener);
+    }
+
+    private final Document document;
+
+    private final Lexer<S> lexer;
+
+    /**
+     * 第一个需要分析的行.
+     */
+    private final Pointer first;
+
+    /**
+     * 最后一个受修改影响的行. 在越过此行之前不能停止
+     */
+    private final Pointer last;
+
+    private boolean dirty;
+
+    private final DocumentListener listener = this::changed;
+
+    private void changed(DocumentEvent event) {
+        int from = event.getStartLine();
+        int to = from + event.getInsertedLines();
+        if (!dirty) {
+            dirty = true;
+            first.moveTo(from, 0);
+            last.moveTo(to, 0);
+            return;
+        }
+        if (from < first.getLineNumber()) {
+            first.moveTo(from, 0);
+        }
+        if (to > last.getLineNumber()) {
+            last.moveTo(to, 0);
+        }
+    }
+
+    /**
+     * 是否有需要分析的行.
+     *
+     * @return 是否需要分析
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * 获取第一个需要分析的行号.
+     *
+     * @return 行号,不需要分析时返回{@code -1}
+     */
+    public int getDirtyLine() {
+        return dirty ? first.getLineNumber() : -1;
+    }
+
+    /**
+     * 分析直到指定行的状态有效. 例如在绘制可见的行之前调用
+     *
+     * @param lineNumber 行号
+     */
+    public void relexTo(int lineNumber) {
+        run(lineNumber, 0, false);
+    }
+
+    /**
+     * 在时间预算内分析. 用于空闲时追赶
+     *
+     * @param nanos 时间预算,纳秒
+     * @return 是否已全部完成
+     */
+    public boolean relex(long nanos) {
+        return run(Integer.MAX_VALUE, System.nanoTime() + nanos, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean run(int through, long deadline, boolean timed) {
+        if (!dirty) {
+            return true;
+        }
+        int n = first.getLineNumber();
+        if (n > through) {
+            return false;
+        }
+        Line line = first.getLine();
+        Line end = last.getLine();
+        boolean passed = last.getLineNumber() < n;
+        S state = line.previous == null ? lexer.initial() : (S) line.previous.data;
+        int count = 0;
+        while (true) {
+            S s = lexer.lex(line, state);
+            Object old = line.data;
+            line.data = s;
+            if (passed && s.equals(old) || line.next == null) {
+                dirty = false;
+                return true;
+            }
+            if (line == end) {
+                passed = true;
+            }
+            line = line.next;
+            n++;
+            state = s;
+            if (n > through || timed && ++count % CHECK_LINES == 0 && System.nanoTime() - deadline >= 0) {
+                first.moveTo(n, 0);
+                if (passed) {
+                    last.moveTo(n - 1, 0);
+                }
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 停止监听文档.
+     */
+    public void dispose() {
+        document.removeListener(listener);
+        first.dispose();
+        last.dispose();
+    }
+
+}
@@ -25,6 +25,9 @@
  */
 package net.dxzc.edo;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 /**
  *
  * @author 823984418@qq.com
@@ -33,55 +36,664 @@ public class Line implements CharSequence {
 
     private static char[] ZERO = new char[0];
 
+    private static byte[] LATIN_ZERO = new byte[0];
+
     Line previous;
 
     Line next;
 
+    Line parent;
+
+    Line left;
+
+    Line right;
+
+    int priority;
+
+    /**
+     * 子树行数.
+     */
+    int count = 1;
+
+    /**
+     * 子树字符数,不包括换行符.
+     */
+    int size;
+
+    /**
+     * 自动换行后此行占据的显示行数.
+     */
+    int rows = 1;
+
+    /**
+     * 子树显示行数.
+     */
+    int rowSum = 1;
+
+    /**
+     * 子树中最长的行的长度.
+     */
+    int maxLength;
+
     public Object data;
 
     char[] buff = ZERO;
 
+    /**
+     * 以Latin-1存储的内容. 不为{@code null}时内容位于此而非{@link #buff}
+     */
+    byte[] bytes = LATIN_ZERO;
+
+    /**
+     * 内容在缓冲中的开始位置.
+     */
+    int base = 0;
+
     int length = 0;
 
+    /**
+     * 缓冲是否与其他对象共享. 共享的缓冲不得原地修改
+     */
+    boolean shared = false;
+
+    /**
+     * 缓冲是否已通过{@link #getBuff()}交出. 交出的缓冲不会归还给{@link BufferPool}
+     */
+    boolean lent = false;
+
+    /**
+     * 以给定内容构建一个行,缓冲恰好容纳内容. 内容均为Latin-1字符时以字节存储
+     *
+     * @param text 缓冲
+     * @param begin 缓冲开始
+     * @param textEnd 缓冲结束
+     * @return 行
+     */
+    static Line of(char[] text, int begin, int textEnd) {
+        Line line = new Line();
+        int size = textEnd - begin;
+        if (size > 0) {
+            if (isLatin1(text, begin, textEnd)) {
+                byte[] b = BufferPool.bytes(size);
+                for (int i = 0; i < size; i++) {
+                    b[i] = (byte) text[begin + i];
+                }
+                line.bytes = b;
+            } else {
+                char[] b = BufferPool.chars(size);
+                System.arraycopy(text, begin, b, 0, size);
+                line.buff = b;
+                line.bytes = null;
+            }
+            line.length = size;
+            line.size = size;
+        }
+        return line;
+    }
+
+    /**
+     * 构建一个直接引用共享缓冲中片段的行.
+     *
+     * @param text 共享缓冲
+     * @param begin 缓冲开始
+     * @param textEnd 缓冲结束
+     * @return 行
+     */
+    static Line span(char[] text, int begin, int textEnd) {
+        Line line = new Line();
+        int size = textEnd - begin;
+        if (size > 0) {
+            line.buff = text;
+            line.bytes = null;
+            line.base = begin;
+            line.length = size;
+            line.size = size;
+            line.shared = true;
+        }
+        return line;
+    }
+
+    /**
+     * 构建一个直接引用共享的Latin-1缓冲中片段的行.
+     *
+     * @param text 共享缓冲
+     * @param begin 缓冲开始
+     * @param textEnd 缓冲结束
+     * @return 行
+     */
+    static Line span(byte[] text, int begin, int textEnd) {
+        Line line = new Line();
+        int size = textEnd - begin;
+        if (size > 0) {
+            line.bytes = text;
+            line.base = begin;
+            line.length = size;
+            line.size = size;
+            line.shared = true;
+        }
+        return line;
+    }
+
+    /**
+     * 范围内是否均为Latin-1字符.
+     *
+     * @param text 缓冲
+     * @param begin 缓冲开始
+     * @param textEnd 缓冲结束
+     * @return 是否均为Latin-1字符
+     */
+    static boolean isLatin1(char[] text, int begin, int textEnd) {
+        for (int i = begin; i < textEnd; i++) {
+            if (text[i] > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 较少使用的状态. 在第一次需要时分配,没有这些状态的行不为此付出内存
+     */
+    static final class Extra {
+
+        /**
+         * 偏移换算的检查点. 修改内容时清除
+         */
+        ColumnIndex columns;
+
+        /**
+         * 各摘要的行值和子树值. 修改内容时清除第一个行值以要求重新计算
+         */
+        Object[] summaries;
+
+        /**
+         * 登记在此行上的指针.
+         */
+        Pointer.Anchor[] anchors;
+
+        int anchorCount;
+
+        /**
+         * 内容的散列值. 为{@code 0}时尚未计算,修改内容时清除
+         */
+        int hash;
+
+    }
+
+    /**
+     * 较少使用的状态,没有时为{@code null}.
+     */
+    Extra extra;
+
+    /**
+     * 获取较少使用的状态,必要时分配.
+     *
+     * @return 状态
+     */
+    Extra extra() {
+        Extra x = extra;
+        return x != null ? x : allocate();
+    }
+
+    /**
+     * 分配状态. 在行的监视器下进行,不会覆盖登记指针的线程已分配的状态
+     */
+    private synchronized Extra allocate() {
+        Extra x = extra;
+        if (x == null) {
+            x = new Extra();
+            extra = x;
+        }
+        return x;
+    }
+
+    /**
+     * 内容所在的分页. 不为{@code null}时内容只读且只能经由{@link Page#use()}取得,
+     * {@link #buff}和{@link #bytes}均为{@code null}
+     */
+    Page page;
+
+    /**
+     * 构建一个内容位于分页中的行.
+     *
+     * @param page 分页
+     * @param begin 内容在分页中的开始位置
+     * @param size 长度
+     * @return 行
+     */
+    static Line paged(Page page, int begin, int size) {
+        Line line = new Line();
+        if (size > 0) {
+            line.page = page;
+            line.bytes = null;
+            line.buff = null;
+            line.base = begin;
+            line.length = size;
+            line.size = size;
+            line.shared = true;
+        }
+        return line;
+    }
+
+    /**
+     * 获取内容所在的缓冲,分页的内容按需载入.
+     *
+     * @return {@code byte[]}或{@code char[]},内容位于{@code [base,base+length)}
+     */
+    Object array() {
+        Page p = page;
+        if (p != null) {
+            return p.use();
+        }
+        byte[] b = bytes;
+        return b != null ? b : buff;
+    }
+
+    /**
+     * 登记一个指针.
+     *
+     * @param anchor 登记项
+     */
+    void attach(Pointer.Anchor anchor) {
+        Extra x = extra();
+        if (x.anchors == null) {
+            x.anchors = new Pointer.Anchor[2];
+        } else if (x.anchorCount == x.anchors.length) {
+            purge();
+            if (x.anchorCount * 2 > x.anchors.length) {
+                x.anchors = Arrays.copyOf(x.anchors, x.anchors.length * 2);
+            }
+        }
+        anchor.slot = x.anchorCount;
+        x.anchors[x.anchorCount++] = anchor;
+    }
+
+    /**
+     * 取消一个指针的登记.
+     *
+     * @param anchor 登记项
+     */
+    void detach(Pointer.Anchor anchor) {
+        Extra x = extra;
+        int i = anchor.slot;
+        Pointer.Anchor last = x.anchors[--x.anchorCount];
+        x.anchors[i] = last;
+        last.slot = i;
+        x.anchors[x.anchorCount] = null;
+        anchor.slot = -1;
+    }
+
+    /**
+     * 清除已被回收的指针的登记.
+     */
+    void purge() {
+        Extra x = extra;
+        if (x == null) {
+            return;
+        }
+        Pointer.Anchor[] anchors = x.anchors;
+        int n = 0;
+        for (int i = 0; i < x.anchorCount; i++) {
+            Pointer.Anchor a = anchors[i];
+            if (a.get() != null) {
+                a.slot = n;
+                anchors[n++] = a;
+            }
+        }
+        if (anchors != null) {
+            Arrays.fill(anchors, n, x.anchorCount, null);
+        }
+        x.anchorCount = n;
+    }
+
+    /**
+     * 获取缓冲. 内容位于{@code [0,length)},如果内容引用了共享缓冲则先复制为独占的缓冲,
+     * 如果内容以Latin-1存储则先转换为{@code char}缓冲.
+     * 只需读取内容时应使用不会改变存储的{@link #getChars(int, int, char[], int)}
+     *
+     * @return 缓冲
+     */
     public char[] getBuff() {
+        if (shared || bytes != null) {
+            lent = true;
+            open(0, 0, 0, true);
+        }
+        lent = true;
         return buff;
     }
 
     /**
-     * 替换内容不得包括换行符.
+     * 是否以Latin-1存储.
+     *
+     * @return 是否以字节存储
+     */
+    public boolean isLatin1() {
+        return array() instanceof byte[];
+    }
+
+    /**
+     * 复制内容到目标缓冲.
      *
      * @param start 开始位置
      * @param end 结束位置
-     * @param text 缓冲
-     * @param begin 缓冲开始
-     * @param size 缓冲结束
+     * @param dst 目标缓冲
+     * @param at 目标开始位置
      */
-    void replace(int start, int end, char[] text, int begin, int textEnd) {
+    public void getChars(int start, int end, char[] dst, int at) {
         if (start < 0 || end < start || end > length) {
             throw new IndexOutOfBoundsException();
         }
+        Object a = array();
+        if (a instanceof char[]) {
+            System.arraycopy((char[]) a, base + start, dst, at, end - start);
+            return;
+        }
+        if (at < 0 || at + end - start > dst.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        byte[] b = (byte[]) a;
+        int from = base + start;
+        for (int i = end - start - 1; i >= 0; i--) {
+            dst[at + i] = (char) (b[from + i] & 0xFF);
+        }
+    }
+
+    /**
+     * 获取字符,不检查范围.
+     *
+     * @param index 位置
+     * @return 字符
+     */
+    char get(int index) {
+        Page p = page;
+        if (p != null) {
+            Object a = p.use();
+            return a instanceof byte[] ? (char) (((byte[]) a)[base + index] & 0xFF) : ((char[]) a)[base + index];
+        }
+        byte[] b = bytes;
+        if (b != null) {
+            return (char) (b[base + index] & 0xFF);
+        }
+        return buff[base + index];
+    }
+
+    /**
+     * 获取内容的散列值. 与{@link String#hashCode()}的算法相同,结果缓存到修改内容为止
+     *
+     * @return 散列值
+     */
+    int hash() {
+        if (length == 0) {
+            return 0;
+        }
+        Extra x = extra();
+        int h = x.hash;
+        if (h == 0) {
+            Object a = array();
+            int e = base + length;
+            if (a instanceof byte[]) {
+                byte[] b = (byte[]) a;
+                for (int i = base; i < e; i++) {
+                    h = 31 * h + (b[i] & 0xFF);
+                }
+            } else {
+                char[] c = (char[]) a;
+                for (int i = base; i < e; i++) {
+                    h = 31 * h + c[i];
+                }
+            }
+            x.hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * 比较内容是否相同.
+     *
+     * @param other 另一行
+     * @return 是否相同
+     */
+    boolean contentEquals(Line other) {
+        int n = length;
+        if (other.length != n) {
+            return false;
+        }
+        if (n == 0) {
+            return true;
+        }
+        Object a = array();
+        Object b = other.array();
+        int i = base;
+        int j = other.base;
+        if (a instanceof byte[] && b instanceof byte[]) {
+            return Arrays.equals((byte[]) a, i, i + n, (byte[]) b, j, j + n);
+        }
+        if (a instanceof char[] && b instanceof char[]) {
+            return Arrays.equals((char[]) a, i, i + n, (char[]) b, j, j + n);
+        }
+        for (int k = 0; k < n; k++) {
+            if (get(k) != other.get(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 替换内容不得包括换行符.
+     *
+     * @param start 开始位置
+     * @param end 结束位置
+     * @param text 缓冲
+     * @param begin 缓冲开始
+     * @param textEnd 缓冲结束
+     * @return 是否重新分配了缓冲
+     */
+    boolean replace(int start, int end, char[] text, int begin, int textEnd) {
         int size = textEnd - begin;
         if (begin < 0 || size < 0 || textEnd > text.length) {
             throw new IndexOutOfBoundsException();
         }
-        int newLength = length + size - (end - start);
-        if (newLength == length) {
+        boolean latin1 = page != null ? page.latin1 : bytes != null;
+        boolean realloc = open(start, end, size, latin1 && !isLatin1(text, begin, textEnd));
+        if (bytes == null) {
             System.arraycopy(text, begin, buff, start, size);
-            return;
+        } else {
+            byte[] b = bytes;
+            for (int i = 0; i < size; i++) {
+                b[start + i] = (byte) text[begin + i];
+            }
         }
-        boolean rb = newLength > buff.length;
-        rb |= newLength < buff.length * 0.6 && buff.length > 8;
-        if (rb) {
-            char[] oldBuff = buff;
-            char[] newBuff = buff = new char[newLength + 10];
-            System.arraycopy(oldBuff, 0, newBuff, 0, start);
-            System.arraycopy(text, begin, newBuff, start, size);
-            System.arraycopy(oldBuff, end, newBuff, start + size, length - end);
+        return realloc;
+    }
+
+    /**
+     * 以另一行的内容替换.
+     *
+     * @param start 开始位置
+     * @param end 结束位置
+     * @param src 来源行,不能是此行
+     * @param from 来源开始位置
+     * @param to 来源结束位置
+     * @return 是否重新分配了缓冲
+     */
+    boolean replace(int start, int end, Line src, int from, int to) {
+        Object a = src.array();
+        if (a instanceof char[]) {
+            return replace(start, end, (char[]) a, src.base + from, src.base + to);
+        }
+        int size = to - from;
+        if (from < 0 || size < 0 || to > src.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        byte[] b = (byte[]) a;
+        boolean realloc = open(start, end, size, false);
+        if (bytes != null) {
+            System.arraycopy(b, src.base + from, bytes, start, size);
         } else {
-            System.arraycopy(buff, end, buff, start + size, length - end);
-            System.arraycopy(text, begin, buff, start, size);
+            for (int i = 0; i < size; i++) {
+                buff[start + i] = (char) (b[src.base + from + i] & 0xFF);
+            }
+        }
+        return realloc;
+    }
+
+    /**
+     * 为替换准备存储. 完成后内容位于独占的缓冲的开始,{@code [start,start+size)}待填充
+     *
+     * @param start 开始位置
+     * @param end 结束位置
+     * @param size 插入的长度
+     * @param wide 是否需要转换为{@code char}缓冲
+     * @return 是否重新分配了缓冲
+     */
+    private boolean open(int start, int end, int size, boolean wide) {
+        if (start < 0 || end < start || end > length) {
+            throw new IndexOutOfBoundsException();
+        }
+        Extra x = extra;
+        if (x != null) {
+            x.columns = null;
+            x.hash = 0;
+            if (x.summaries != null) {
+                x.summaries[0] = null;
+            }
+        }
+        if (page != null) {
+            Object a = array();
+            if (a instanceof byte[]) {
+                bytes = (byte[]) a;
+                buff = ZERO;
+            } else {
+                buff = (char[]) a;
+                bytes = null;
+            }
+            page = null;
+        }
+        int newLength = length + size - (end - start);
+        boolean keep = shared || lent;
+        if (bytes != null && wide) {
+            byte[] oldBytes = bytes;
+            int b = base;
+            char[] newBuff = buff = BufferPool.chars(BufferPool.capacity(newLength));
+            for (int i = 0; i < start; i++) {
+                newBuff[i] = (char) (oldBytes[b + i] & 0xFF);
+            }
+            for (int i = end; i < length; i++) {
+                newBuff[i - end + start + size] = (char) (oldBytes[b + i] & 0xFF);
+            }
+            if (!keep) {
+                BufferPool.release(oldBytes);
+            }
+            bytes = null;
+            base = 0;
+            shared = false;
+            lent = false;
+            length = newLength;
+            return true;
+        }
+        if (bytes != null) {
+            byte[] old = bytes;
+            int cap = old.length;
+            boolean realloc = shared || newLength > cap || newLength < cap / 4 && cap > 16;
+            if (realloc) {
+                int b = base;
+                byte[] newBytes = bytes = BufferPool.bytes(BufferPool.capacity(newLength));
+                System.arraycopy(old, b, newBytes, 0, start);
+                System.arraycopy(old, b + end, newBytes, start + size, length - end);
+                if (!keep) {
+                    BufferPool.release(old);
+                }
+                base = 0;
+                shared = false;
+                lent = false;
+            } else if (newLength != length) {
+                System.arraycopy(old, end, old, start + size, length - end);
+            }
+            length = newLength;
+            return realloc;
+        }
+        char[] old = buff;
+        int cap = old.length;
+        boolean realloc = shared || newLength > cap || newLength < cap / 4 && cap > 16;
+        if (realloc) {
+            int b = base;
+            char[] newBuff = buff = BufferPool.chars(BufferPool.capacity(newLength));
+            System.arraycopy(old, b, newBuff, 0, start);
+            System.arraycopy(old, b + end, newBuff, start + size, length - end);
+            if (!keep) {
+                BufferPool.release(old);
+            }
+            base = 0;
+            shared = false;
+            lent = false;
+        } else if (newLength != length) {
+            System.arraycopy(old, end, old, start + size, length - end);
         }
         length = newLength;
+        return realloc;
+    }
+
+    /**
+     * 获取偏移之前的内容的显示列. 制表符对齐到{@code tabSize}的倍数,东亚宽字符占两列
+     *
+     * @param offset UTF-16偏移
+     * @param tabSize 制表符宽度
+     * @return 显示列
+     */
+    public int getVisualColumn(int offset, int tabSize) {
+        return ColumnIndex.value(this, ColumnIndex.COLUMNS, offset, tabSize);
+    }
+
+    /**
+     * 获取偏移之前的码点数.
+     *
+     * @param offset UTF-16偏移
+     * @return 码点偏移
+     */
+    public int getCodePointOffset(int offset) {
+        return ColumnIndex.value(this, ColumnIndex.CODE_POINTS, offset, 1);
+    }
+
+    /**
+     * 获取偏移之前的内容以UTF-8编码的字节数.
+     *
+     * @param offset UTF-16偏移
+     * @return 字节偏移
+     */
+    public int getUtf8Offset(int offset) {
+        return ColumnIndex.value(this, ColumnIndex.UTF8, offset, 1);
+    }
+
+    /**
+     * 查找显示列不超过{@code column}的最大偏移. 落在宽字符或制表符中间时返回其开始
+     *
+     * @param column 显示列
+     * @param tabSize 制表符宽度
+     * @return UTF-16偏移
+     */
+    public int offsetOfVisualColumn(int column, int tabSize) {
+        return ColumnIndex.offset(this, ColumnIndex.COLUMNS, column, tabSize);
+    }
+
+    /**
+     * 查找码点偏移对应的偏移. 超出行尾时返回行的长度
+     *
+     * @param codePointOffset 码点偏移
+     * @return UTF-16偏移
+     */
+    public int offsetOfCodePoint(int codePointOffset) {
+        return ColumnIndex.offset(this, ColumnIndex.CODE_POINTS, codePointOffset, 1);
+    }
+
+    /**
+     * 查找UTF-8字节偏移对应的偏移. 落在字符的编码中间时返回字符的开始
+     *
+     * @param utf8Offset 字节偏移
+     * @return UTF-16偏移
+     */
+    public int offsetOfUtf8(int utf8Offset) {
+        return ColumnIndex.offset(this, ColumnIndex.UTF8, utf8Offset, 1);
     }
 
     @Override
@@ -91,10 +703,10 @@ public class Line implements CharSequence {
 
     @Override
     public char charAt(int index) {
-        if (index < 0 || index > length) {
+        if (index < 0 || index >= length) {
             throw new IndexOutOfBoundsException(index);
         }
-        return buff[index];
+        return get(index);
     }
 
     @Override
@@ -102,7 +714,11 @@ public class Line implements CharSequence {
         if (start < 0 || end < start || end > length) {
             throw new IndexOutOfBoundsException();
         }
-        return new String(buff, start, end - start);
+        Object a = array();
+        if (a instanceof byte[]) {
+            return new String((byte[]) a, base + start, end - start, StandardCharsets.ISO_8859_1);
+        }
+        return new String((char[]) a, base + start, end - start);
     }
 
     @Override
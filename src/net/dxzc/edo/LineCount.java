@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+/**
+ * 内置的逐行计数.
+ *
+ * @author 823984418@qq.com
+ * @see Summary#WORDS
+ * @see Summary#CODE_POINTS
+ */
+final class LineCount implements Summary<Long> {
+
+    private static final Long ZERO = 0L;
+
+    private final boolean words;
+
+    LineCount(boolean words) {
+        this.words = words;
+    }
+
+    @Override
+    public Long identity() {
+        return ZERO;
+    }
+
+    @Override
+    public Long of(Line line) {
+        int length = line.length;
+        if (length == 0) {
+            return ZERO;
+        }
+        Object a = line.array();
+        int b = line.base;
+        int e = b + length;
+        long n = 0;
+        if (a instanceof byte[]) {
+            byte[] bs = (byte[]) a;
+            if (!words) {
+                return (long) length;
+            }
+            boolean in = false;
+            for (int i = b; i < e; i++) {
+                boolean w = !Character.isWhitespace((char) (bs[i] & 0xFF));
+                if (w && !in) {
+                    n++;
+                }
+                in = w;
+            }
+        } else {
+            char[] cs = (char[]) a;
+            if (!words) {
+                return (long) Character.codePointCount(cs, b, length);
+            }
+            boolean in = false;
+            for (int i = b; i < e; i++) {
+                boolean w = !Character.isWhitespace(cs[i]);
+                if (w && !in) {
+                    n++;
+                }
+                in = w;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public Long merge(Long left, Long right) {
+        long l = left;
+        if (l == 0) {
+            return right;
+        }
+        long r = right;
+        return r == 0 ? left : l + r;
+    }
+
+}
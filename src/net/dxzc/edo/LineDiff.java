@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * 按行比较两份内容并只应用不同的部分. 先去除相同的前缀和后缀,
+ * 中间部分以Myers算法比较各行的散列值,散列值相同时再比较内容
+ *
+ * @author 823984418@qq.com
+ * @see Document#reloadFrom(Path, Charset)
+ */
+final class LineDiff {
+
+    /**
+     * Myers算法的最大编辑距离. 超过时中间部分作为一整块替换
+     */
+    static final int MAX_EDITS = 1024;
+
+    private LineDiff() {
+    }
+
+    /**
+     * 以文件的内容重新载入文档.
+     *
+     * @param document 文档
+     * @param path 文件
+     * @param charset 字符集
+     * @throws IOException 读取错误
+     */
+    static void reload(Document document, Path path, Charset charset) throws IOException {
+        if (document.isPaged()) {
+            throw new IllegalStateException("paged document cannot be reloaded");
+        }
+        Document fresh = Document.load(path, charset);
+        apply(document, lines(document), lines(fresh));
+    }
+
+    private static Line[] lines(Document document) {
+        Line[] lines = new Line[document.lineCount];
+        Line line = document.headLine;
+        for (int i = 0; i < lines.length; i++, line = line.next) {
+            lines[i] = line;
+        }
+        return lines;
+    }
+
+    private static int end(Line line) {
+        return LineTree.startOf(line) + line.length;
+    }
+
+    private static boolean same(Line a, Line b) {
+        return a.hash() == b.hash() && a.contentEquals(b);
+    }
+
+    /**
+     * 将文档的行{@code a}修改为{@code b}.
+     *
+     * @param document 文档
+     * @param a 文档的行
+     * @param b 新的行
+     */
+    static void apply(Document document, Line[] a, Line[] b) {
+        int n = a.length;
+        int m = b.length;
+        int head = 0;
+        while (head < n && head < m && same(a[head], b[head])) {
+            head++;
+        }
+        int tail = 0;
+        while (tail < n - head && tail < m - head && same(a[n - 1 - tail], b[m - 1 - tail])) {
+            tail++;
+        }
+        if (head == n && head == m) {
+            return;
+        }
+        int[] hunks = diff(a, head, n - tail, b, head, m - tail);
+        document.edit(batch -> {
+            for (int h = 0; h < hunks.length; h += 4) {
+                int a0 = hunks[h];
+                int a1 = hunks[h + 1];
+                int b0 = hunks[h + 2];
+                int b1 = hunks[h + 3];
+                //从前一行的行尾开始替换,使前一行和之后的行对象保持不变
+                boolean lead = a0 != 0;
+                int start = lead ? end(a[a0 - 1]) : 0;
+                int end = lead || a1 == n ? end(a[a1 - 1]) : LineTree.startOf(a[a1]);
+                int size = 0;
+                for (int j = b0; j < b1; j++) {
+                    size += b[j].length + 1;
+                }
+                if (!lead && a1 == n) {
+                    size--;
+                }
+                char[] text = new char[Math.max(size, 0)];
+                int at = 0;
+                for (int j = b0; j < b1; j++) {
+                    if (lead) {
+                        text[at++] = '\n';
+                    }
+                    b[j].getChars(0, b[j].length, text, at);
+                    at += b[j].length;
+                    if (!lead && (j + 1 < b1 || a1 < n)) {
+                        text[at++] = '\n';
+                    }
+                }
+                batch.replace(start, end - start, text, 0, at);
+            }
+        });
+    }
+
+    /**
+     * 比较{@code a[aFrom,aTo)}和{@code b[bFrom,bTo)}.
+     *
+     * @return 每四个数为一处不同{@code a0,a1,b0,b1},表示以{@code b[b0,b1)}替换{@code a[a0,a1)}
+     */
+    static int[] diff(Line[] a, int aFrom, int aTo, Line[] b, int bFrom, int bTo) {
+        int n = aTo - aFrom;
+        int m = bTo - bFrom;
+        if (n == 0 || m == 0) {
+            return new int[]{aFrom, aTo, bFrom, bTo};
+        }
+        int limit = Math.min(n + m, MAX_EDITS);
+        int off = limit + 1;
+        int[] v = new int[2 * limit + 3];
+        ArrayList<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= limit; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || k != d && v[off + k - 1] < v[off + k + 1]) {
+                    x = v[off + k + 1];
+                } else {
+                    x = v[off + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && same(a[aFrom + x], b[bFrom + y])) {
+                    x++;
+                    y++;
+                }
+                v[off + k] = x;
+                if (x >= n && y >= m) {
+                    trace.add(Arrays.copyOfRange(v, off - d, off + d + 1));
+                    return hunks(trace, n, m, aFrom, bFrom);
+                }
+            }
+            trace.add(Arrays.copyOfRange(v, off - d, off + d + 1));
+        }
+        return new int[]{aFrom, aTo, bFrom, bTo};
+    }
+
+    /**
+     * 回溯路径并将相邻的删除和插入合并为块.
+     */
+    private static int[] hunks(ArrayList<int[]> trace, int n, int m, int aFrom, int bFrom) {
+        boolean[] deleted = new boolean[n];
+        boolean[] inserted = new boolean[m];
+        int x = n;
+        int y = m;
+        for (int d = trace.size() - 1; d > 0; d--) {
+            int[] v = trace.get(d - 1);
+            int k = x - y;
+            //v[i]对应对角线i-(d-1)
+            int prev;
+            if (k == -d || k != d && v[k - 1 + d - 1] < v[k + 1 + d - 1]) {
+                prev = k + 1;
+            } else {
+                prev = k - 1;
+            }
+            int px = v[prev + d - 1];
+            int py = px - prev;
+            if (prev == k + 1) {
+                inserted[py] = true;
+            } else {
+                deleted[px] = true;
+            }
+            x = px;
+            y = py;
+        }
+        int[] out = new int[16];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < n || j < m) {
+            if (i < n && j < m && !deleted[i] && !inserted[j]) {
+                i++;
+                j++;
+                continue;
+            }
+            int a0 = i;
+            int b0 = j;
+            while (i < n && deleted[i]) {
+                i++;
+            }
+            while (j < m && inserted[j]) {
+                j++;
+            }
+            if (size + 4 > out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            out[size++] = aFrom + a0;
+            out[size++] = aFrom + i;
+            out[size++] = bFrom + b0;
+            out[size++] = bFrom + j;
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.nio.CharBuffer;
+import java.util.ConcurrentModificationException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * 按行号范围遍历的分割器. 范围对半分割,子类决定每行给出的元素
+ * <p>
+ * 元素只在文档被修改前有效,遍历中文档被修改时抛出{@link ConcurrentModificationException}
+ *
+ * @author 823984418@qq.com
+ * @param <T> 元素的类型
+ * @see Document#lines()
+ * @see Document#chunks()
+ */
+abstract class LineSpliterator<T> implements Spliterator<T> {
+
+    /**
+     * 不再分割的最小行数.
+     */
+    static final int MIN_SPLIT = 64;
+
+    LineSpliterator(Document document, int modCount, int from, int to, Line line) {
+        this.document = document;
+        this.modCount = modCount;
+        this.index = from;
+        this.fence = to;
+        this.line = line;
+    }
+
+    final Document document;
+
+    final int modCount;
+
+    /**
+     * 下一行的序号,从0计数.
+     */
+    int index;
+
+    int fence;
+
+    /**
+     * 序号为{@link #index}的行. 尚未查找时为{@code null}
+     */
+    private Line line;
+
+    /**
+     * 获取一行内容的视图.
+     *
+     * @param line 行
+     * @return 视图
+     */
+    static CharSequence view(Line line) {
+        int n = line.length;
+        if (n == 0) {
+            return "";
+        }
+        Object a = line.array();
+        if (a instanceof byte[]) {
+            return new Latin1Text((byte[]) a, line.base, line.base + n);
+        }
+        return CharBuffer.wrap((char[]) a, line.base, n).asReadOnlyBuffer();
+    }
+
+    /**
+     * 检查文档是否被修改.
+     */
+    final void check() {
+        if (document.modCount != modCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * 取出序号为{@link #index}的行并前进.
+     *
+     * @return 行
+     */
+    final Line next() {
+        check();
+        Line l = line;
+        if (l == null) {
+            l = document.tree.get(index);
+        }
+        line = l.next;
+        index++;
+        return l;
+    }
+
+    /**
+     * 构建覆盖{@code [from,to)}的分割器.
+     *
+     * @param from 开始序号
+     * @param to 结束序号
+     * @param line 序号为{@code from}的行,可以为{@code null}
+     * @return 分割器
+     */
+    abstract LineSpliterator<T> split(int from, int to, Line line);
+
+    @Override
+    public Spliterator<T> trySplit() {
+        int lo = index;
+        int mid = (lo + fence) >>> 1;
+        if (mid - lo < MIN_SPLIT || !splittable()) {
+            return null;
+        }
+        check();
+        LineSpliterator<T> prefix = split(lo, mid, line);
+        index = mid;
+        line = null;
+        return prefix;
+    }
+
+    /**
+     * 当前是否可以分割. 正在遍历一行中间时不可分割
+     *
+     * @return 是否可以分割
+     */
+    boolean splittable() {
+        return true;
+    }
+
+    @Override
+    public long estimateSize() {
+        return fence - index;
+    }
+
+    /**
+     * 每行给出一个视图.
+     *
+     * @see #view(Line)
+     */
+    static final class Lines extends LineSpliterator<CharSequence> {
+
+        Lines(Document document, int from, int to) {
+            super(document, document.modCount, from, to, null);
+        }
+
+        private Lines(Document document, int modCount, int from, int to, Line line) {
+            super(document, modCount, from, to, line);
+        }
+
+        @Override
+        LineSpliterator<CharSequence> split(int from, int to, Line line) {
+            return new Lines(document, modCount, from, to, line);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super CharSequence> action) {
+            if (index >= fence) {
+                return false;
+            }
+            action.accept(view(next()));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super CharSequence> action) {
+            while (index < fence) {
+                action.accept(view(next()));
+            }
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+
+    }
+
+    /**
+     * 按块给出内容,各块依次连接即为范围内的内容. 文档的最后一行之外的每行之后给出单独的换行符块.
+     * {@code char}存储的行给出其缓冲的只读视图,
+     * Latin-1存储的行分段转换到此分割器独有的缓冲中,块在取得下一块之前有效
+     */
+    static final class Chunks extends LineSpliterator<CharBuffer> {
+
+        /**
+         * 转换Latin-1内容时每块的最大长度.
+         */
+        static final int CHUNK = 8192;
+
+        Chunks(Document document, int from, int to) {
+            super(document, document.modCount, from, to, null);
+        }
+
+        private Chunks(Document document, int modCount, int from, int to, Line line) {
+            super(document, modCount, from, to, line);
+        }
+
+        /**
+         * 正在遍历的行. 为{@code null}时从下一行开始
+         */
+        private Line current;
+
+        /**
+         * 在{@link #current}中的偏移.
+         */
+        private int offset;
+
+        private char[] scratch;
+
+        private final CharBuffer newline = CharBuffer.wrap("\n");
+
+        @Override
+        LineSpliterator<CharBuffer> split(int from, int to, Line line) {
+            return new Chunks(document, modCount, from, to, line);
+        }
+
+        @Override
+        boolean splittable() {
+            return current == null;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super CharBuffer> action) {
+            while (true) {
+                Line l = current;
+                if (l == null) {
+                    if (index >= fence) {
+                        return false;
+                    }
+                    l = current = next();
+                    offset = 0;
+                }
+                int n = l.length;
+                if (offset < n) {
+                    check();
+                    Object a = l.array();
+                    if (a instanceof char[]) {
+                        action.accept(CharBuffer.wrap((char[]) a, l.base + offset, n - offset).asReadOnlyBuffer());
+                        offset = n;
+                    } else {
+                        byte[] b = (byte[]) a;
+                        char[] s = scratch;
+                        if (s == null) {
+                            s = scratch = new char[CHUNK];
+                        }
+                        int k = Math.min(n - offset, s.length);
+                        int at = l.base + offset;
+                        for (int i = 0; i < k; i++) {
+                            s[i] = (char) (b[at + i] & 0xFF);
+                        }
+                        offset += k;
+                        action.accept(CharBuffer.wrap(s, 0, k));
+                    }
+                    return true;
+                }
+                current = null;
+                if (l.next != null) {
+                    newline.clear();
+                    action.accept(newline);
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return (long) (fence - index) * 2;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+
+    }
+
+}
@@ -0,0 +1,521 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.util.Arrays;
+
+/**
+ * 行的平衡树索引. 以{@link Line}本身作为树堆的结点,按子树行数和字符数进行查找
+ *
+ * @author 823984418@qq.com
+ */
+final class LineTree {
+
+    /**
+     * 子树行数.
+     *
+     * @param line 结点
+     * @return 行数
+     */
+    static int count(Line line) {
+        return line == null ? 0 : line.count;
+    }
+
+    /**
+     * 子树字符数,包括每行后的换行符.
+     *
+     * @param line 结点
+     * @return 字符数
+     */
+    static int chars(Line line) {
+        return line == null ? 0 : line.size + line.count;
+    }
+
+    /**
+     * 子树显示行数.
+     *
+     * @param line 结点
+     * @return 显示行数
+     */
+    static int rows(Line line) {
+        return line == null ? 0 : line.rowSum;
+    }
+
+    /**
+     * 重新计算结点的统计信息.
+     *
+     * @param line 结点
+     */
+    static void update(Line line) {
+        Line l = line.left;
+        Line r = line.right;
+        int c = 1;
+        int s = line.length;
+        int w = line.rows;
+        int m = line.length;
+        if (l != null) {
+            c += l.count;
+            s += l.size;
+            w += l.rowSum;
+            if (l.maxLength > m) {
+                m = l.maxLength;
+            }
+        }
+        if (r != null) {
+            c += r.count;
+            s += r.size;
+            w += r.rowSum;
+            if (r.maxLength > m) {
+                m = r.maxLength;
+            }
+        }
+        line.count = c;
+        line.size = s;
+        line.rowSum = w;
+        line.maxLength = m;
+    }
+
+    /**
+     * 没有摘要时的空列表.
+     */
+    private static final Summary<?>[] NONE = {};
+
+    /**
+     * 维护的摘要. 每个结点的{@link Line.Extra#summaries}依次保存各摘要的行值和子树值
+     */
+    Summary<?>[] summaries = NONE;
+
+    /**
+     * 重新计算结点的统计信息和摘要. 行值被清除时重新计算行值
+     *
+     * @param line 结点
+     */
+    @SuppressWarnings("unchecked")
+    void fix(Line line) {
+        update(line);
+        Summary<Object>[] list = (Summary<Object>[]) summaries;
+        int n = list.length;
+        if (n == 0) {
+            return;
+        }
+        Line.Extra e = line.extra();
+        Object[] v = e.summaries;
+        if (v == null || v.length != n << 1) {
+            v = new Object[n << 1];
+            e.summaries = v;
+        }
+        if (v[0] == null) {
+            for (int i = 0; i < n; i++) {
+                v[i << 1] = list[i].of(line);
+            }
+        }
+        Line l = line.left;
+        Line r = line.right;
+        for (int i = 0; i < n; i++) {
+            Object x = v[i << 1];
+            if (l != null) {
+                x = list[i].merge(l.extra.summaries[i << 1 | 1], x);
+            }
+            if (r != null) {
+                x = list[i].merge(x, r.extra.summaries[i << 1 | 1]);
+            }
+            v[i << 1 | 1] = x;
+        }
+    }
+
+    /**
+     * 重新计算子树中所有结点的统计信息.
+     *
+     * @param line 子树
+     */
+    void refresh(Line line) {
+        if (line != null) {
+            refresh(line.left);
+            refresh(line.right);
+            fix(line);
+        }
+    }
+
+    /**
+     * 行改变后更新到根的路径.
+     *
+     * @param line 行
+     */
+    void resize(Line line) {
+        for (Line p = line; p != null; p = p.parent) {
+            fix(p);
+        }
+    }
+
+    /**
+     * 开始维护一个摘要. 计算所有行的行值,需要线性时间
+     *
+     * @param summary 摘要
+     * @return 摘要的序号
+     */
+    int addSummary(Summary<?> summary) {
+        int n = summaries.length;
+        Summary<?>[] list = Arrays.copyOf(summaries, n + 1);
+        list[n] = summary;
+        for (Line line = first(); line != null; line = line.next) {
+            Line.Extra e = line.extra();
+            Object[] v = e.summaries;
+            Object[] w = new Object[(n + 1) << 1];
+            if (v != null && v.length == n << 1) {
+                System.arraycopy(v, 0, w, 0, n << 1);
+            }
+            w[n << 1] = summary.of(line);
+            e.summaries = w;
+        }
+        summaries = list;
+        refresh(root);
+        return n;
+    }
+
+    /**
+     * 停止维护一个摘要.
+     *
+     * @param index 摘要的序号
+     */
+    void removeSummary(int index) {
+        int n = summaries.length - 1;
+        Summary<?>[] list = new Summary<?>[n];
+        System.arraycopy(summaries, 0, list, 0, index);
+        System.arraycopy(summaries, index + 1, list, index, n - index);
+        for (Line line = first(); line != null; line = line.next) {
+            Line.Extra e = line.extra;
+            Object[] v = e.summaries;
+            Object[] w = null;
+            if (n != 0) {
+                w = new Object[n << 1];
+                System.arraycopy(v, 0, w, 0, index << 1);
+                System.arraycopy(v, (index + 1) << 1, w, index << 1, (n - index) << 1);
+            }
+            e.summaries = w;
+        }
+        summaries = n == 0 ? NONE : list;
+    }
+
+    /**
+     * 获取序号在{@code [from,to)}的行的摘要.
+     *
+     * @param index 摘要的序号
+     * @param from 开始序号
+     * @param to 结束序号
+     * @return 摘要
+     */
+    @SuppressWarnings("unchecked")
+    Object summarize(int index, int from, int to) {
+        Summary<Object> s = (Summary<Object>) summaries[index];
+        return summarize(s, index << 1, root, from, to, s.identity());
+    }
+
+    private static Object summarize(Summary<Object> s, int k, Line t, int from, int to, Object acc) {
+        while (t != null && from < to) {
+            if (from <= 0 && to >= t.count) {
+                return s.merge(acc, t.extra.summaries[k | 1]);
+            }
+            int lc = count(t.left);
+            if (from < lc) {
+                acc = summarize(s, k, t.left, from, to, acc);
+            }
+            if (from <= lc && to > lc) {
+                acc = s.merge(acc, t.extra.summaries[k]);
+            }
+            from -= lc + 1;
+            to -= lc + 1;
+            t = t.right;
+        }
+        return acc;
+    }
+
+    private Line first() {
+        Line t = root;
+        while (t != null && t.left != null) {
+            t = t.left;
+        }
+        return t;
+    }
+
+    /**
+     * 获取行的序号. 从0计数
+     *
+     * @param line 行
+     * @return 序号
+     */
+    static int indexOf(Line line) {
+        int i = count(line.left);
+        for (Line p = line; p.parent != null; p = p.parent) {
+            if (p.parent.right == p) {
+                i += count(p.parent.left) + 1;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * 获取行之前的显示行数.
+     *
+     * @param line 行
+     * @return 显示行数
+     */
+    static int rowOf(Line line) {
+        int row = rows(line.left);
+        for (Line p = line; p.parent != null; p = p.parent) {
+            Line q = p.parent;
+            if (q.right == p) {
+                row += rows(q.left) + q.rows;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * 获取行首的位置.
+     *
+     * @param line 行
+     * @return 位置
+     */
+    static int startOf(Line line) {
+        int pos = chars(line.left);
+        for (Line p = line; p.parent != null; p = p.parent) {
+            Line q = p.parent;
+            if (q.right == p) {
+                pos += chars(q.left) + q.length + 1;
+            }
+        }
+        return pos;
+    }
+
+    Line root;
+
+    private int seed = 0x2545F491;
+
+    private Line splitLeft;
+
+    private Line splitRight;
+
+    private final Line[] stack = new Line[64];
+
+    /**
+     * 初始化为以{@code chain}开始由{@link Line#next}连接的行.
+     *
+     * @param chain 第一行
+     * @param size 行数
+     */
+    void init(Line chain, int size) {
+        root = build(chain, size);
+    }
+
+    /**
+     * 按序号查找行.
+     *
+     * @param index 序号,从0计数
+     * @return 行
+     */
+    Line get(int index) {
+        Line t = root;
+        while (true) {
+            int lc = count(t.left);
+            if (index < lc) {
+                t = t.left;
+            } else if (index == lc) {
+                return t;
+            } else {
+                index -= lc + 1;
+                t = t.right;
+            }
+        }
+    }
+
+    /**
+     * 按位置查找所在的行. 行尾位置归属于该行
+     *
+     * @param pos 位置
+     * @return 行
+     */
+    Line getByPos(int pos) {
+        Line t = root;
+        while (true) {
+            int lc = chars(t.left);
+            if (pos < lc) {
+                t = t.left;
+            } else {
+                pos -= lc;
+                if (pos <= t.length || t.right == null) {
+                    return t;
+                }
+                pos -= t.length + 1;
+                t = t.right;
+            }
+        }
+    }
+
+    /**
+     * 获取包含显示行的行.
+     *
+     * @param row 显示行,从0计数
+     * @return 行
+     */
+    Line getByRow(int row) {
+        Line t = root;
+        while (true) {
+            int lr = rows(t.left);
+            if (row < lr) {
+                t = t.left;
+            } else {
+                row -= lr;
+                if (row < t.rows || t.right == null) {
+                    return t;
+                }
+                row -= t.rows;
+                t = t.right;
+            }
+        }
+    }
+
+    /**
+     * 将序号在{@code [from,from+remove)}的行替换为以{@code chain}开始由{@link Line#next}连接的行.
+     * 调用者负责维护链表
+     *
+     * @param from 开始序号
+     * @param remove 移除的行数
+     * @param chain 插入的行
+     * @param insert 插入的行数
+     */
+    void replace(int from, int remove, Line chain, int insert) {
+        if (remove == 0 && insert == 0) {
+            return;
+        }
+        split(root, from);
+        Line a = splitLeft;
+        split(splitRight, remove);
+        Line c = splitRight;
+        Line r = merge(merge(a, build(chain, insert)), c);
+        r.parent = null;
+        root = r;
+    }
+
+    private int nextPriority() {
+        int x = seed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        seed = x;
+        return x;
+    }
+
+    private void split(Line t, int k) {
+        if (t == null) {
+            splitLeft = splitRight = null;
+            return;
+        }
+        int lc = count(t.left);
+        if (k <= lc) {
+            split(t.left, k);
+            t.left = splitRight;
+            if (splitRight != null) {
+                splitRight.parent = t;
+            }
+            fix(t);
+            t.parent = null;
+            splitRight = t;
+        } else {
+            split(t.right, k - lc - 1);
+            t.right = splitLeft;
+            if (splitLeft != null) {
+                splitLeft.parent = t;
+            }
+            fix(t);
+            t.parent = null;
+            splitLeft = t;
+        }
+    }
+
+    private Line merge(Line a, Line b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            Line r = merge(a.right, b);
+            a.right = r;
+            r.parent = a;
+            fix(a);
+            return a;
+        } else {
+            Line l = merge(a, b.left);
+            b.left = l;
+            l.parent = b;
+            fix(b);
+            return b;
+        }
+    }
+
+    /**
+     * 以线性时间从有序的行构建树堆.
+     *
+     * @param chain 第一行
+     * @param size 行数
+     * @return 根
+     */
+    private Line build(Line chain, int size) {
+        Line[] st = size < stack.length ? stack : new Line[size + 1];
+        int sp = 0;
+        Line x = chain;
+        for (int i = 0; i < size; i++, x = x.next) {
+            x.priority = nextPriority();
+            x.parent = x.left = x.right = null;
+            Line last = null;
+            while (sp > 0 && st[sp - 1].priority < x.priority) {
+                last = st[--sp];
+                fix(last);
+            }
+            x.left = last;
+            if (last != null) {
+                last.parent = x;
+            }
+            if (sp > 0) {
+                st[sp - 1].right = x;
+                x.parent = st[sp - 1];
+            }
+            st[sp++] = x;
+        }
+        while (sp > 1) {
+            fix(st[--sp]);
+        }
+        Line r = null;
+        if (sp == 1) {
+            r = st[0];
+            fix(r);
+        }
+        Arrays.fill(st, 0, Math.min(st.length, size + 1), null);
+        return r;
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+/**
+ * 标记的范围. 范围随文档的修改移动,在开始处插入的内容不属于范围,在结束处插入的内容也不属于范围.
+ * 范围内的内容被全部删除后成为空范围
+ * <p>
+ * 标记本身是{@link MarkerLayer}中树堆的结点,开始位置相对于父结点保存,因此移动其后的所有标记只需修改一个结点
+ *
+ * @author 823984418@qq.com
+ * @see MarkerLayer
+ */
+public final class Marker {
+
+    Marker(MarkerLayer layer, int length) {
+        this.layer = layer;
+        this.length = length;
+    }
+
+    MarkerLayer layer;
+
+    Marker parent;
+
+    Marker left;
+
+    Marker right;
+
+    int priority;
+
+    /**
+     * 开始位置相对于父结点开始位置的偏移. 根结点为绝对位置
+     */
+    int rel;
+
+    /**
+     * 范围的长度.
+     */
+    int length;
+
+    /**
+     * 子树中最大的结束位置,相对于此结点的开始位置.
+     */
+    int reach;
+
+    public Object data;
+
+    /**
+     * 获取所在的层.
+     *
+     * @return 层,已被移除时返回{@code null}
+     */
+    public MarkerLayer getLayer() {
+        return layer;
+    }
+
+    /**
+     * 获取开始位置. 需要对数时间
+     *
+     * @return 开始位置
+     */
+    public int getStart() {
+        check();
+        int pos = 0;
+        for (Marker m = this; m != null; m = m.parent) {
+            pos += m.rel;
+        }
+        return pos;
+    }
+
+    /**
+     * 获取结束位置. 需要对数时间
+     *
+     * @return 结束位置
+     */
+    public int getEnd() {
+        return getStart() + length;
+    }
+
+    /**
+     * 获取长度.
+     *
+     * @return 长度
+     */
+    public int getLength() {
+        check();
+        return length;
+    }
+
+    /**
+     * 从层中移除.
+     *
+     * @return 是否此前仍在层中
+     */
+    public boolean remove() {
+        MarkerLayer l = layer;
+        if (l == null) {
+            return false;
+        }
+        l.remove(this);
+        return true;
+    }
+
+    private void check() {
+        if (layer == null) {
+            throw new IllegalStateException("marker removed");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return layer == null ? "Marker[removed]" : "Marker[" + getStart() + "," + getEnd() + "]";
+    }
+
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 一层标记. 标记按开始位置保存在树堆中,每个结点记录子树中最大的结束位置,
+ * 修改时只需对数时间移动之后的标记再加上逐个调整受影响的标记,查询只访问与范围相交的标记
+ * <p>
+ * 一个文档可以有多个层,例如诊断,搜索高亮和拼写检查各用一层
+ *
+ * @author 823984418@qq.com
+ * @see Marker
+ */
+public final class MarkerLayer {
+
+    /**
+     * 为文档创建一个空的层.
+     *
+     * @param document 文档
+     */
+    public MarkerLayer(Document document) {
+        this.document = document;
+        MarkerLayer[] ls = document.markerLayers;
+        ls = Arrays.copyOf(ls, ls.length + 1);
+        ls[ls.length - 1] = this;
+        document.markerLayers = ls;
+    }
+
+    private final Document document;
+
+    private Marker root;
+
+    private int size;
+
+    private int seed = 0x5DEECE66;
+
+    private Marker splitLeft;
+
+    private Marker splitRight;
+
+    private final ArrayList<Marker> scratch = new ArrayList<>();
+
+    /**
+     * 获取文档.
+     *
+     * @return 文档
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * 获取标记数.
+     *
+     * @return 标记数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 添加一个标记.
+     *
+     * @param start 开始位置
+     * @param end 结束位置
+     * @return 标记
+     */
+    public Marker add(int start, int end) {
+        check();
+        if (start < 0 || end < start || end > document.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        Marker m = node(start, end - start);
+        split(root, start);
+        root = merge(merge(splitLeft, m), splitRight);
+        root.parent = null;
+        splitLeft = splitRight = null;
+        size++;
+        return m;
+    }
+
+    /**
+     * 移除一个标记.
+     *
+     * @param marker 标记
+     */
+    void remove(Marker marker) {
+        Marker p = marker.parent;
+        int s = marker.rel;
+        Marker x = merge(detach(marker.left, s), detach(marker.right, s));
+        if (x != null) {
+            x.parent = p;
+        }
+        if (p == null) {
+            root = x;
+        } else if (p.left == marker) {
+            p.left = x;
+        } else {
+            p.right = x;
+        }
+        for (Marker q = p; q != null; q = q.parent) {
+            fix(q);
+        }
+        marker.layer = null;
+        marker.parent = marker.left = marker.right = null;
+        size--;
+    }
+
+    /**
+     * 以给定的范围替换层中的全部标记. 原有的标记均被移除
+     *
+     * @param starts 各标记的开始位置
+     * @param ends 各标记的结束位置
+     * @param data 各标记的{@link Marker#data},可以为{@code null}
+     * @return 标记,与参数的顺序相同
+     */
+    public Marker[] set(int[] starts, int[] ends, Object[] data) {
+        check();
+        int n = starts.length;
+        if (ends.length != n || data != null && data.length != n) {
+            throw new IllegalArgumentException();
+        }
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++) {
+            int s = starts[i];
+            if (s < 0 || ends[i] < s || ends[i] > document.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            order[i] = (long) s << 32 | i;
+        }
+        Arrays.sort(order);
+        clear();
+        Marker[] ms = new Marker[n];
+        Marker r = null;
+        for (long o : order) {
+            int i = (int) o;
+            Marker m = node(starts[i], ends[i] - starts[i]);
+            if (data != null) {
+                m.data = data[i];
+            }
+            ms[i] = m;
+            r = merge(r, m);
+        }
+        root = r;
+        size = n;
+        return ms;
+    }
+
+    /**
+     * 移除全部标记.
+     */
+    public void clear() {
+        scratch.clear();
+        collect(root, 0);
+        for (Marker m : scratch) {
+            m.layer = null;
+            m.parent = m.left = m.right = null;
+        }
+        scratch.clear();
+        root = null;
+        size = 0;
+    }
+
+    /**
+     * 获取与范围{@code [from,to]}相接触的标记,即开始位置不大于{@code to}且结束位置不小于{@code from}.
+     * 按开始位置排序
+     *
+     * @param from 开始位置
+     * @param to 结束位置
+     * @return 标记
+     */
+    public List<Marker> getMarkers(int from, int to) {
+        ArrayList<Marker> list = new ArrayList<>();
+        query(root, 0, from, to, list);
+        return list;
+    }
+
+    /**
+     * 获取与行号在{@code [fromLine,toLine]}的行相接触的标记.
+     *
+     * @param fromLine 开始行号,从1计数
+     * @param toLine 结束行号,包括
+     * @return 标记
+     */
+    public List<Marker> getMarkersOfLines(int fromLine, int toLine) {
+        if (fromLine < 1 || toLine < fromLine || toLine > document.lineCount) {
+            throw new IndexOutOfBoundsException();
+        }
+        Line last = document.tree.get(toLine - 1);
+        int from = LineTree.startOf(document.tree.get(fromLine - 1));
+        return getMarkers(from, LineTree.startOf(last) + last.length);
+    }
+
+    /**
+     * 停止跟随文档的修改并移除全部标记.
+     */
+    public void dispose() {
+        MarkerLayer[] ls = document.markerLayers;
+        for (int i = 0; i < ls.length; i++) {
+            if (ls[i] == this) {
+                MarkerLayer[] n = new MarkerLayer[ls.length - 1];
+                System.arraycopy(ls, 0, n, 0, i);
+                System.arraycopy(ls, i + 1, n, i, n.length - i);
+                document.markerLayers = n;
+                clear();
+                return;
+            }
+        }
+    }
+
+    private void check() {
+        for (MarkerLayer l : document.markerLayers) {
+            if (l == this) {
+                return;
+            }
+        }
+        throw new IllegalStateException("layer disposed");
+    }
+
+    /**
+     * 跟随文档的修改. 开始位置在被替换的范围内的标记移动到插入内容之后,
+     * 结束位置在被替换的范围内的标记结束于插入内容之前
+     *
+     * @param pos 修改的位置
+     * @param removed 删除的长度
+     * @param inserted 插入的长度
+     */
+    void update(int pos, int removed, int inserted) {
+        if (root == null) {
+            return;
+        }
+        int e = pos + removed;
+        int d = inserted - removed;
+        split(root, pos);
+        Marker a = splitLeft;
+        split(splitRight, e + 1);
+        Marker m = splitLeft;
+        Marker c = splitRight;
+        splitLeft = splitRight = null;
+        if (c != null) {
+            c.rel += d;
+        }
+        if (a != null) {
+            stretch(a, 0, pos, e, d);
+        }
+        if (m != null) {
+            m = collapse(m, pos, e, inserted);
+        }
+        root = merge(merge(a, m), c);
+        root.parent = null;
+    }
+
+    /**
+     * 调整开始位置在修改之前而结束位置在修改之后的标记.
+     */
+    private void stretch(Marker t, int base, int pos, int e, int d) {
+        int s = base + t.rel;
+        if (s + t.reach <= pos) {
+            return;
+        }
+        if (t.left != null) {
+            stretch(t.left, s, pos, e, d);
+        }
+        if (t.right != null) {
+            stretch(t.right, s, pos, e, d);
+        }
+        int end = s + t.length;
+        if (end > pos) {
+            t.length = (end > e ? end + d : pos) - s;
+        }
+        fix(t);
+    }
+
+    /**
+     * 重建开始位置在被替换的范围内的标记. 被完全删除的标记成为位于{@code pos}的空范围,其余的从插入内容之后开始
+     */
+    private Marker collapse(Marker m, int pos, int e, int inserted) {
+        ArrayList<Marker> list = scratch;
+        collect(m, 0);
+        int d = inserted - (e - pos);
+        Marker empty = null;
+        Marker kept = null;
+        for (Marker x : list) {
+            int end = x.rel + x.length;
+            x.parent = x.left = x.right = null;
+            if (end > e) {
+                x.rel = pos + inserted;
+                x.length = end + d - x.rel;
+                fix(x);
+                kept = merge(kept, x);
+            } else {
+                x.rel = pos;
+                x.length = 0;
+                fix(x);
+                empty = merge(empty, x);
+            }
+        }
+        list.clear();
+        return merge(empty, kept);
+    }
+
+    /**
+     * 按顺序收集子树中的标记,并将{@link Marker#rel}改为绝对位置.
+     */
+    private void collect(Marker t, int base) {
+        while (t != null) {
+            int s = base + t.rel;
+            collect(t.left, s);
+            t.rel = s;
+            scratch.add(t);
+            base = s;
+            t = t.right;
+        }
+    }
+
+    private static void query(Marker t, int base, int from, int to, List<Marker> out) {
+        while (t != null) {
+            int s = base + t.rel;
+            if (s + t.reach < from) {
+                return;
+            }
+            query(t.left, s, from, to, out);
+            if (s > to) {
+                return;
+            }
+            if (s + t.length >= from) {
+                out.add(t);
+            }
+            base = s;
+            t = t.right;
+        }
+    }
+
+    private Marker node(int start, int length) {
+        Marker m = new Marker(this, length);
+        m.priority = nextPriority();
+        m.rel = start;
+        m.reach = length;
+        return m;
+    }
+
+    private static void fix(Marker t) {
+        int r = t.length;
+        Marker l = t.left;
+        if (l != null && l.rel + l.reach > r) {
+            r = l.rel + l.reach;
+        }
+        Marker g = t.right;
+        if (g != null && g.rel + g.reach > r) {
+            r = g.rel + g.reach;
+        }
+        t.reach = r;
+    }
+
+    /**
+     * 取下子结点,使其开始位置与父结点处于同一坐标.
+     */
+    private static Marker detach(Marker child, int base) {
+        if (child != null) {
+            child.rel += base;
+            child.parent = null;
+        }
+        return child;
+    }
+
+    /**
+     * 挂上子结点,使其开始位置相对于父结点.
+     */
+    private static Marker attach(Marker child, Marker parent, int base) {
+        if (child != null) {
+            child.rel -= base;
+            child.parent = parent;
+        }
+        return child;
+    }
+
+    /**
+     * 按开始位置分割为小于{@code key}和不小于{@code key}的两部分.
+     */
+    private void split(Marker t, int key) {
+        if (t == null) {
+            splitLeft = splitRight = null;
+            return;
+        }
+        int s = t.rel;
+        t.parent = null;
+        if (s < key) {
+            split(detach(t.right, s), key);
+            t.right = attach(splitLeft, t, s);
+            fix(t);
+            splitLeft = t;
+        } else {
+            split(detach(t.left, s), key);
+            t.left = attach(splitRight, t, s);
+            fix(t);
+            splitRight = t;
+        }
+    }
+
+    private static Marker merge(Marker a, Marker b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            int s = a.rel;
+            a.right = attach(merge(detach(a.right, s), b), a, s);
+            fix(a);
+            return a;
+        } else {
+            int s = b.rel;
+            b.left = attach(merge(a, detach(b.left, s)), b, s);
+            fix(b);
+            return b;
+        }
+    }
+
+    private int nextPriority() {
+        int x = seed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        seed = x;
+        return x;
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * 分页文档中的一块连续的行. 内容按需从文件读取并解码,由{@link Cache}按最近使用淘汰
+ *
+ * @author 823984418@qq.com
+ */
+final class Page {
+
+    Page(Cache cache, long from, long to, boolean latin1) {
+        this.cache = cache;
+        this.from = from;
+        this.to = to;
+        this.latin1 = latin1;
+    }
+
+    final Cache cache;
+
+    /**
+     * 在文件中的开始位置.
+     */
+    final long from;
+
+    /**
+     * 在文件中的结束位置.
+     */
+    final long to;
+
+    /**
+     * 是否以Latin-1直接使用文件的字节.
+     */
+    final boolean latin1;
+
+    /**
+     * 载入的内容,{@code byte[]}或{@code char[]},淘汰后为{@code null}.
+     * 内容不可变,淘汰只丢弃此引用,已取得内容的读者不受影响
+     */
+    private volatile Object array;
+
+    /**
+     * 获取内容,必要时载入. 块中的行总是经由此方法取得内容,缓存从不修改行的字段,
+     * 因此任意线程的载入和淘汰都不会与修改行的线程冲突
+     *
+     * @return 内容,{@code byte[]}或{@code char[]}
+     */
+    Object use() {
+        Cache c = cache;
+        Object a = array;
+        if (a != null && c.last == this) {
+            return a;
+        }
+        synchronized (c) {
+            a = array;
+            if (a == null) {
+                a = read();
+                array = a;
+                c.resident += bytes(a);
+            }
+            if (c.last != this) {
+                c.pages.remove(this);
+                c.pages.add(this);
+                c.last = this;
+                c.trim();
+            }
+            return a;
+        }
+    }
+
+    /**
+     * 淘汰内容. 只在持有缓存的锁时调用
+     */
+    private void evict() {
+        Object a = array;
+        array = null;
+        cache.resident -= bytes(a);
+    }
+
+    private static long bytes(Object a) {
+        return a instanceof byte[] ? ((byte[]) a).length : 2L * ((char[]) a).length;
+    }
+
+    /**
+     * 读取并解码内容. 只在持有缓存的锁时调用
+     */
+    private Object read() {
+        int size = (int) (to - from);
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        try {
+            FileChannel channel = cache.channel();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, from + buffer.position()) < 0) {
+                    throw new IOException("file truncated: " + cache.path);
+                }
+            }
+            buffer.flip();
+            if (latin1) {
+                return buffer.array();
+            }
+            CharBuffer chars = DocumentLoader.decoder(cache.charset).decode(buffer);
+            return chars.array();
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 一个分页文档的所有块共享的缓存.
+     */
+    static final class Cache {
+
+        Cache(FileChannel channel, Path path, Charset charset, long limit) {
+            this.channel = channel;
+            this.path = path;
+            this.charset = charset;
+            this.limit = limit;
+        }
+
+        /**
+         * 读取块的通道. 整个文档共用,随文档关闭
+         */
+        private FileChannel channel;
+
+        private boolean closed;
+
+        final Path path;
+
+        final Charset charset;
+
+        /**
+         * 保留内容的最大字节数. 最近使用的块总是保留
+         */
+        final long limit;
+
+        /**
+         * 保留的内容的字节数.
+         */
+        long resident;
+
+        /**
+         * 按最近使用排序的已载入的块.
+         */
+        final LinkedHashSet<Page> pages = new LinkedHashSet<>();
+
+        volatile Page last;
+
+        private void trim() {
+            Iterator<Page> it = pages.iterator();
+            while (resident > limit && pages.size() > 1) {
+                Page p = it.next();
+                it.remove();
+                p.evict();
+            }
+        }
+
+        synchronized long getResidentBytes() {
+            return resident;
+        }
+
+        /**
+         * 获取通道. 读取的线程被中断时通道会随之关闭,此时重新打开
+         */
+        private FileChannel channel() throws IOException {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            if (!channel.isOpen()) {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+            }
+            return channel;
+        }
+
+        synchronized void close() throws IOException {
+            closed = true;
+            channel.close();
+        }
+
+    }
+
+}
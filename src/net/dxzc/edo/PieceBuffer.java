@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+/**
+ * 只追加的缓冲. 插入的内容写入这里后不再改变,行可以直接引用其中的片段
+ *
+ * @author 823984418@qq.com
+ */
+final class PieceBuffer {
+
+    /**
+     * 每块的字符数. 超过此大小的内容单独分配
+     */
+    static final int CHUNK = 1 << 16;
+
+    private char[] chunk;
+
+    private int used;
+
+    /**
+     * 最近一次追加写入的数组.
+     */
+    char[] array;
+
+    /**
+     * 追加内容.
+     *
+     * @param text 缓冲
+     * @param begin 缓冲开始
+     * @param textEnd 缓冲结束
+     * @return 内容在{@link #array}中的开始位置
+     */
+    int append(char[] text, int begin, int textEnd) {
+        int size = textEnd - begin;
+        if (size >= CHUNK) {
+            char[] a = array = new char[size];
+            System.arraycopy(text, begin, a, 0, size);
+            return 0;
+        }
+        if (chunk == null || chunk.length - used < size) {
+            chunk = new char[CHUNK];
+            used = 0;
+        }
+        System.arraycopy(text, begin, chunk, used, size);
+        array = chunk;
+        int at = used;
+        used += size;
+        return at;
+    }
+
+}
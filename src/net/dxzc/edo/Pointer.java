@@ -25,21 +25,52 @@
  */
 package net.dxzc.edo;
 
+import java.lang.ref.WeakReference;
+
 /**
  * 指向一个代码点的指针. 注意,偏移可能的取值是[0,length]而非[0,length)
+ * <p>
+ * 指针只记录所在的{@link Line}和行内偏移,行号和位置在需要时通过索引计算并缓存,
+ * 因此编辑只需修改被编辑的行上的指针. 不再使用的指针应当调用{@link #dispose()}
  *
  * @author 823984418@qq.com
  */
 public class Pointer implements Comparable<Pointer> {
 
+    /**
+     * 指针在行上的登记项. 弱引用指针,使未释放的指针仍可被回收
+     */
+    static final class Anchor extends WeakReference<Pointer> {
+
+        Anchor(Pointer pointer) {
+            super(pointer);
+        }
+
+        /**
+         * 在所在行的登记表中的下标.
+         */
+        int slot = -1;
+
+    }
+
     /**
      * 构建一个指向文档头部的指针.
      *
      * @param document 文档
      */
     public Pointer(Document document) {
+        this(document, false);
+    }
+
+    /**
+     * 构建一个指向文档头部的指针.
+     *
+     * @param document 文档
+     * @param stickyRight 在此处插入内容时是否移动到插入内容之后
+     */
+    public Pointer(Document document, boolean stickyRight) {
         this.document = document;
-        document.pointers.add(this);
+        this.stickyRight = stickyRight;
         moveToHead();
     }
 
@@ -48,32 +79,83 @@ public class Pointer implements Comparable<Pointer> {
      */
     public final Document document;
 
-    int lineNumber;
+    final Anchor anchor = new Anchor(this);
+
+    boolean stickyRight;
 
     Line line;
 
     int offset;
 
+    /**
+     * 缓存的行号,仅当{@link #stamp}与文档修改计数一致时有效.
+     */
+    int lineNumber;
+
+    /**
+     * 缓存的位置,仅当{@link #stamp}与文档修改计数一致时有效.
+     */
     int pos;
 
+    int stamp;
+
+    /**
+     * 释放此指针. 此后文档不再维护它的位置,指针也不应再被使用
+     */
+    public void dispose() {
+        if (line != null) {
+            detach(line);
+            line = null;
+        }
+    }
+
+    /**
+     * 是否已经释放.
+     *
+     * @return 是否已经释放
+     */
+    public boolean isDisposed() {
+        return line == null;
+    }
+
+    /**
+     * 在此处插入内容时是否移动到插入内容之后. 默认停留在插入内容之前
+     *
+     * @return 是否右粘滞
+     */
+    public boolean isStickyRight() {
+        return stickyRight;
+    }
+
+    /**
+     * 设置在此处插入内容时是否移动到插入内容之后.
+     *
+     * @param stickyRight 是否右粘滞
+     */
+    public void setStickyRight(boolean stickyRight) {
+        this.stickyRight = stickyRight;
+    }
+
     /**
      * 移动到文档头部.
      */
     public void moveToHead() {
-        lineNumber = 1;
-        line = document.headLine;
+        setLine(document.headLine);
         offset = 0;
+        lineNumber = 1;
         pos = 0;
+        stamp = document.modCount;
     }
 
     /**
      * 移动到文档尾部.
      */
     public void moveToEnd() {
-        lineNumber = document.lineCount;
-        line = document.endLine;
+        setLine(document.endLine);
         offset = line.length;
+        lineNumber = document.lineCount;
         pos = document.length;
+        stamp = document.modCount;
     }
 
     /**
@@ -82,6 +164,7 @@ public class Pointer implements Comparable<Pointer> {
      * @return 行号
      */
     public int getLineNumber() {
+        sync();
         return lineNumber;
     }
 
@@ -103,12 +186,77 @@ public class Pointer implements Comparable<Pointer> {
         return offset;
     }
 
+    /**
+     * 获取在行内的显示列.
+     *
+     * @param tabSize 制表符宽度
+     * @return 显示列
+     * @see Line#getVisualColumn(int, int)
+     */
+    public int getVisualColumn(int tabSize) {
+        return line.getVisualColumn(offset, tabSize);
+    }
+
+    /**
+     * 获取在行内的码点偏移.
+     *
+     * @return 码点偏移
+     */
+    public int getCodePointOffset() {
+        return line.getCodePointOffset(offset);
+    }
+
+    /**
+     * 获取在行内的UTF-8字节偏移.
+     *
+     * @return 字节偏移
+     */
+    public int getUtf8Offset() {
+        return line.getUtf8Offset(offset);
+    }
+
+    /**
+     * 在当前行内移动到显示列.
+     *
+     * @param column 显示列
+     * @param tabSize 制表符宽度
+     * @see Line#offsetOfVisualColumn(int, int)
+     */
+    public void moveToVisualColumn(int column, int tabSize) {
+        moveInLine(line.offsetOfVisualColumn(column, tabSize));
+    }
+
+    /**
+     * 在当前行内移动到码点偏移.
+     *
+     * @param codePointOffset 码点偏移
+     */
+    public void moveToCodePointOffset(int codePointOffset) {
+        moveInLine(line.offsetOfCodePoint(codePointOffset));
+    }
+
+    /**
+     * 在当前行内移动到UTF-8字节偏移.
+     *
+     * @param utf8Offset 字节偏移
+     */
+    public void moveToUtf8Offset(int utf8Offset) {
+        moveInLine(line.offsetOfUtf8(utf8Offset));
+    }
+
+    private void moveInLine(int newOffset) {
+        sync();
+        pos += newOffset - offset;
+        offset = newOffset;
+    }
+
     /**
      * 获取当前位置.
      *
      * @return 当前位置
      */
     public int getPos() {
+        sync();
         return pos;
     }
 
@@ -121,10 +269,11 @@ public class Pointer implements Comparable<Pointer> {
         if (document != ptr.document) {
             throw new RuntimeException();
         }
-        lineNumber = ptr.lineNumber;
-        line = ptr.line;
+        setLine(ptr.line);
         offset = ptr.offset;
+        lineNumber = ptr.lineNumber;
         pos = ptr.pos;
+        stamp = ptr.stamp;
     }
 
     /**
@@ -134,36 +283,23 @@ public class Pointer implements Comparable<Pointer> {
      * @return 是否发生边界碰撞
      */
     public boolean move(int size) {
+        sync();
         boolean r = false;
-        Line l = line;
-        int ln = lineNumber;
-        pos += size;
-        size += offset;
-        while (size < 0) {
-            if (l.previous == null) {
-                size = 0;
-                r = true;
-                pos = 0;
-                break;
-            }
-            l = l.previous;
-            ln--;
-            size += l.length + 1;
+        long target = (long) pos + size;
+        if (target < 0) {
+            target = 0;
+            r = true;
+        } else if (target > document.length) {
+            target = document.length;
+            r = true;
         }
-        while (size > l.length) {
-            if (l.next == null) {
-                size = l.length;
-                r = true;
-                pos = document.length;
-                break;
-            }
-            size -= l.length + 1;
-            l = l.next;
-            ln++;
+        int newOffset = offset + (int) target - pos;
+        if (newOffset >= 0 && newOffset <= line.length) {
+            offset = newOffset;
+            pos = (int) target;
+        } else {
+            seek((int) target);
         }
-        line = l;
-        lineNumber = ln;
-        offset = size;
         return r;
     }
 
@@ -174,31 +310,24 @@ public class Pointer implements Comparable<Pointer> {
      * @return 是否发生边界碰撞
      */
     public boolean lineMove(int size) {
+        sync();
         boolean r = false;
-        pos -= offset;
-        offset = 0;
-        Line l = line;
-        int ln = lineNumber;
-        while (size < 0) {
-            if (l.previous == null) {
-                r = true;
-                break;
-            }
-            l = l.previous;
-            pos -= l.length;
-            ln--;
+        long target = (long) lineNumber + size;
+        if (target < 1) {
+            target = 1;
+            r = true;
+        } else if (target > document.lineCount) {
+            target = document.lineCount;
+            r = true;
         }
-        while (size > 0) {
-            if (l.next == null) {
-                r = true;
-                break;
-            }
-            pos += l.length;
-            l = l.next;
-            ln++;
+        if (target == lineNumber) {
+            pos -= offset;
+        } else {
+            lineNumber = (int) target;
+            setLine(document.tree.get(lineNumber - 1));
+            pos = LineTree.startOf(line);
         }
-        line = l;
-        lineNumber = ln;
+        offset = 0;
         return r;
     }
 
@@ -209,18 +338,22 @@ public class Pointer implements Comparable<Pointer> {
      * @param newOffset 新的位置
      */
     public void moveTo(int newLineNumber, int newOffset) {
-        Line ol = line;
-        int oln = lineNumber;
-        int oo = offset;
-        int op = pos;
-        if (newOffset < 0 || lineMove(newLineNumber - lineNumber) || newOffset > line.length) {
-            line = ol;
-            lineNumber = oln;
-            offset = oo;
-            pos = op;
+        sync();
+        if (newLineNumber < 1 || newLineNumber > document.lineCount || newOffset < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        Line l = newLineNumber == lineNumber ? line : document.tree.get(newLineNumber - 1);
+        if (newOffset > l.length) {
             throw new IndexOutOfBoundsException();
         }
-        offset = newLineNumber;
+        if (l != line) {
+            setLine(l);
+            lineNumber = newLineNumber;
+            pos = LineTree.startOf(l) + newOffset;
+        } else {
+            pos += newOffset - offset;
+        }
+        offset = newOffset;
     }
 
     /**
@@ -232,9 +365,66 @@ public class Pointer implements Comparable<Pointer> {
         if (newPos < 0 || newPos > document.length) {
             throw new IndexOutOfBoundsException();
         }
+        sync();
         move(newPos - pos);
     }
 
+    /**
+     * 通过索引定位到指定位置.
+     *
+     * @param newPos 新的位置
+     */
+    private void seek(int newPos) {
+        Line l = document.tree.getByPos(newPos);
+        setLine(l);
+        lineNumber = LineTree.indexOf(l) + 1;
+        offset = newPos - LineTree.startOf(l);
+        pos = newPos;
+    }
+
+    /**
+     * 更新缓存的行号和位置.
+     */
+    void sync() {
+        int mc = document.modCount;
+        if (stamp != mc) {
+            lineNumber = LineTree.indexOf(line) + 1;
+            pos = LineTree.startOf(line) + offset;
+            stamp = mc;
+        }
+    }
+
+    /**
+     * 改变所在的行并维护行上的登记.
+     *
+     * @param l 新的行
+     */
+    void setLine(Line l) {
+        if (line != l) {
+            if (line != null) {
+                detach(line);
+            }
+            if (document.sharedAnchors) {
+                synchronized (l) {
+                    l.attach(anchor);
+                }
+            } else {
+                l.attach(anchor);
+            }
+            line = l;
+        }
+    }
+
+    private void detach(Line l) {
+        if (document.sharedAnchors) {
+            synchronized (l) {
+                l.detach(anchor);
+            }
+        } else {
+            l.detach(anchor);
+        }
+    }
+
     /**
      * 返回此指针的后方字符. 如果处于末尾,返回{@code -1}
      *
@@ -247,7 +437,7 @@ public class Pointer implements Comparable<Pointer> {
             }
             return '\n';
         }
-        return line.buff[offset];
+        return line.get(offset);
     }
 
     /**
@@ -261,7 +451,10 @@ public class Pointer implements Comparable<Pointer> {
         if (document != o.document) {
             throw new UnsupportedOperationException();
         }
-        return pos - o.pos;
+        if (line == o.line) {
+            return offset - o.offset;
+        }
+        return getPos() - o.getPos();
     }
 
     /**
@@ -274,11 +467,15 @@ public class Pointer implements Comparable<Pointer> {
         if (document != o.document) {
             throw new UnsupportedOperationException();
         }
-        return lineNumber - o.lineNumber;
+        if (line == o.line) {
+            return 0;
+        }
+        return getLineNumber() - o.getLineNumber();
     }
 
     @Override
     public String toString() {
+        sync();
         return lineNumber + ":" + offset + "|" + pos;
     }
 
@@ -0,0 +1,493 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 在文档中查找. 支持以跳跃表加速的字面量查找,忽略大小写,正则表达式和跨行的查找.
+ * 较大的文档按行范围切分后在并行池中查找
+ * <p>
+ * 命中以数组返回,依次为每次命中的开始和结束位置,命中之间互不重叠.
+ * 查找期间不得修改文档
+ *
+ * @author 823984418@qq.com
+ */
+public final class Search {
+
+    /**
+     * 小于此字符数的文档在调用线程中查找.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 20;
+
+    /**
+     * 并行查找时每块的最大行数.
+     */
+    static final int LEAF_LINES = 1 << 13;
+
+    /**
+     * 正则表达式在块之后先读取的字符数. 读到此窗口的末尾时在整个文档中重新查找
+     */
+    static final int REGEX_LOOKAHEAD = 1 << 16;
+
+    /**
+     * 构建字面量查找.
+     *
+     * @param pattern 内容,不得为空
+     * @return 查找
+     */
+    public static Search literal(CharSequence pattern) {
+        return literal(pattern, false);
+    }
+
+    /**
+     * 构建字面量查找.
+     *
+     * @param pattern 内容,不得为空
+     * @param ignoreCase 是否忽略大小写
+     * @return 查找
+     */
+    public static Search literal(CharSequence pattern, boolean ignoreCase) {
+        int m = pattern.length();
+        if (m == 0) {
+            throw new IllegalArgumentException("empty pattern");
+        }
+        char[] p = new char[m];
+        boolean multiLine = false;
+        for (int i = 0; i < m; i++) {
+            char c = pattern.charAt(i);
+            multiLine |= c == '\n';
+            p[i] = ignoreCase ? fold(c) : c;
+        }
+        int[] shift = new int[256];
+        Arrays.fill(shift, m);
+        for (int i = 0; i < m - 1; i++) {
+            shift[p[i] & 0xFF] = m - 1 - i;
+        }
+        return new Search(p, shift, ignoreCase, multiLine, null);
+    }
+
+    /**
+     * 构建正则表达式查找. 表达式可以匹配换行符
+     *
+     * @param pattern 表达式
+     * @return 查找
+     */
+    public static Search regex(Pattern pattern) {
+        return new Search(null, null, false, true, pattern);
+    }
+
+    /**
+     * 构建正则表达式查找.
+     *
+     * @param regex 表达式
+     * @param ignoreCase 是否忽略大小写
+     * @return 查找
+     */
+    public static Search regex(String regex, boolean ignoreCase) {
+        int flags = Pattern.MULTILINE;
+        if (ignoreCase) {
+            flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        }
+        return regex(Pattern.compile(regex, flags));
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private Search(char[] pattern, int[] shift, boolean ignoreCase, boolean multiLine, Pattern regex) {
+        this.pattern = pattern;
+        this.shift = shift;
+        this.ignoreCase = ignoreCase;
+        this.multiLine = multiLine;
+        this.regex = regex;
+        this.wide = pattern != null && !ignoreCase && !Line.isLatin1(pattern, 0, pattern.length);
+    }
+
+    private final char[] pattern;
+
+    /**
+     * 是否包含不能以Latin-1存储的字符,这样的内容不会出现在以字节存储的行中.
+     */
+    private final boolean wide;
+
+    private final int[] shift;
+
+    private final boolean ignoreCase;
+
+    /**
+     * 命中是否可能跨行. 否则可以逐行在缓冲上查找
+     */
+    private final boolean multiLine;
+
+    private final Pattern regex;
+
+    /**
+     * 查找所有命中.
+     *
+     * @param document 文档
+     * @return 依次为每次命中的开始和结束位置
+     */
+    public int[] findAll(Document document) {
+        Task task = new Task(document, 0, document.lineCount);
+        Hits hits;
+        if (document.length < PARALLEL_THRESHOLD) {
+            hits = task.compute();
+        } else {
+            hits = ForkJoinPool.commonPool().invoke(task);
+        }
+        return Arrays.copyOf(hits.data, hits.size);
+    }
+
+    /**
+     * 查找所有命中,并以指针返回.
+     *
+     * @param document 文档
+     * @return 依次为每次命中的开始和结束指针
+     */
+    public Pointer[] findAllPointers(Document document) {
+        int[] hits = findAll(document);
+        Pointer[] r = new Pointer[hits.length];
+        for (int i = 0; i < hits.length; i++) {
+            r[i] = new Pointer(document, (i & 1) == 1);
+            r[i].moveTo(hits[i]);
+        }
+        return r;
+    }
+
+    /**
+     * 从指定位置开始查找下一个命中.
+     *
+     * @param document 文档
+     * @param from 开始位置
+     * @return 命中的开始和结束位置,找不到时返回{@code null}
+     */
+    public int[] find(Document document, int from) {
+        if (from < 0 || from > document.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        Hits hits = new Hits();
+        if (multiLine) {
+            scan(new DocumentText(document, 0, document.length), from, document.length, hits, true);
+        } else {
+            Line line = document.tree.getByPos(from);
+            int start = LineTree.startOf(line);
+            for (; line != null && hits.size == 0; line = line.next) {
+                scanLine(line, start, Math.max(0, from - start), hits, true);
+                start += line.length + 1;
+            }
+        }
+        return hits.size == 0 ? null : Arrays.copyOf(hits.data, 2);
+    }
+
+    /**
+     * 将所有命中替换为指定内容. 所有替换作为一批编辑应用,并作为一次编辑撤销
+     *
+     * @param document 文档
+     * @param replacement 替换的内容
+     * @return 替换的次数
+     */
+    public int replaceAll(Document document, CharSequence replacement) {
+        int[] hits = findAll(document);
+        if (hits.length > 0) {
+            document.edit(batch -> {
+                for (int i = 0; i < hits.length; i += 2) {
+                    batch.replace(hits[i], hits[i + 1] - hits[i], replacement);
+                }
+            });
+        }
+        return hits.length / 2;
+    }
+
+    /**
+     * 命中列表.
+     */
+    private static final class Hits {
+
+        int[] data = new int[16];
+
+        int size;
+
+        void add(int start, int end) {
+            if (size + 2 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = start;
+            data[size++] = end;
+        }
+
+        int lastEnd() {
+            return size == 0 ? -1 : data[size - 1];
+        }
+
+    }
+
+    /**
+     * 在一行的缓冲中查找,命中不跨行.
+     *
+     * @param line 行
+     * @param lineStart 行首位置
+     * @param from 行内开始偏移
+     * @param hits 命中
+     * @param first 是否只查找第一个
+     */
+    private void scanLine(Line line, int lineStart, int from, Hits hits, boolean first) {
+        Object a = line.array();
+        if (a instanceof byte[]) {
+            if (!wide) {
+                scanLatin1((byte[]) a, line, lineStart, from, hits, first);
+            }
+            return;
+        }
+        char[] p = pattern;
+        int m = p.length;
+        char[] buff = (char[]) a;
+        int base = line.base;
+        int limit = line.length - m;
+        int i = from;
+        while (i <= limit) {
+            int j = m - 1;
+            char c = buff[base + i + j];
+            char last = ignoreCase ? fold(c) : c;
+            if (last == p[j]) {
+                do {
+                    j--;
+                } while (j >= 0 && (ignoreCase ? fold(buff[base + i + j]) : buff[base + i + j]) == p[j]);
+                if (j < 0) {
+                    hits.add(lineStart + i, lineStart + i + m);
+                    if (first) {
+                        return;
+                    }
+                    i += m;
+                    continue;
+                }
+            }
+            i += shift[last & 0xFF];
+        }
+    }
+
+    /**
+     * 在以Latin-1存储的行中查找.
+     *
+     * @see #scanLine(Line, int, int, Hits, boolean)
+     */
+    private void scanLatin1(byte[] bytes, Line line, int lineStart, int from, Hits hits, boolean first) {
+        char[] p = pattern;
+        int m = p.length;
+        int base = line.base;
+        int limit = line.length - m;
+        int i = from;
+        while (i <= limit) {
+            int j = m - 1;
+            char c = (char) (bytes[base + i + j] & 0xFF);
+            char last = ignoreCase ? fold(c) : c;
+            if (last == p[j]) {
+                do {
+                    j--;
+                } while (j >= 0 && (ignoreCase ? fold((char) (bytes[base + i + j] & 0xFF))
+                        : (char) (bytes[base + i + j] & 0xFF)) == p[j]);
+                if (j < 0) {
+                    hits.add(lineStart + i, lineStart + i + m);
+                    if (first) {
+                        return;
+                    }
+                    i += m;
+                    continue;
+                }
+            }
+            i += shift[last & 0xFF];
+        }
+    }
+
+    /**
+     * 在字符序列中查找开始于{@code [from,to)}的命中.
+     *
+     * @param text 整个文档的字符序列
+     * @param from 开始位置
+     * @param to 结束位置
+     * @param hits 命中
+     * @param first 是否只查找第一个
+     */
+    private void scan(CharSequence text, int from, int to, Hits hits, boolean first) {
+        if (regex != null) {
+            int length = text.length();
+            int limit = (int) Math.min(length, (long) to + REGEX_LOOKAHEAD);
+            Matcher matcher = regex.matcher(text);
+            matcher.useTransparentBounds(true).useAnchoringBounds(false);
+            int at = from;
+            while (at <= to && at <= length) {
+                matcher.region(at, limit);
+                boolean found = matcher.find();
+                if (limit < length && matcher.hitEnd()) {
+                    //命中可能因窗口的边界而不同或缺失,在整个文档中重新确定
+                    matcher.region(at, length);
+                    found = matcher.find();
+                }
+                if (!found) {
+                    return;
+                }
+                int s = matcher.start();
+                int e = matcher.end();
+                if (s >= to && !(s == to && to == length)) {
+                    return;
+                }
+                hits.add(s, e);
+                if (first) {
+                    return;
+                }
+                at = e == s ? e + 1 : e;
+            }
+            return;
+        }
+        char[] p = pattern;
+        int m = p.length;
+        int limit = Math.min(to - 1, text.length() - m);
+        int i = from;
+        while (i <= limit) {
+            int j = m - 1;
+            char c = text.charAt(i + j);
+            char last = ignoreCase ? fold(c) : c;
+            if (last == p[j]) {
+                do {
+                    j--;
+                } while (j >= 0 && (ignoreCase ? fold(text.charAt(i + j)) : text.charAt(i + j)) == p[j]);
+                if (j < 0) {
+                    hits.add(i, i + m);
+                    if (first) {
+                        return;
+                    }
+                    i += m;
+                    continue;
+                }
+            }
+            i += shift[last & 0xFF];
+        }
+    }
+
+    /**
+     * 在行范围中查找.
+     */
+    private final class Task extends RecursiveTask<Hits> {
+
+        private static final long serialVersionUID = 1L;
+
+        final Document document;
+
+        final int from;
+
+        final int to;
+
+        Task(Document document, int from, int to) {
+            this.document = document;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Hits compute() {
+            if (to - from > LEAF_LINES && document.length >= PARALLEL_THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                Task l = new Task(document, from, mid);
+                Task r = new Task(document, mid, to);
+                l.fork();
+                Hits rh = r.compute();
+                return join(l.join(), rh);
+            }
+            Hits hits = new Hits();
+            Line line = document.tree.get(from);
+            int start = LineTree.startOf(line);
+            if (multiLine) {
+                int end = to == document.lineCount ? document.length : LineTree.startOf(document.tree.get(to));
+                scan(new DocumentText(document, 0, document.length), start, end, hits, false);
+            } else {
+                for (int i = from; i < to; i++, line = line.next) {
+                    scanLine(line, start, 0, hits, false);
+                    start += line.length + 1;
+                }
+            }
+            return hits;
+        }
+
+        /**
+         * 连接相邻范围的命中. 跨行的命中可能越过范围的边界,
+         * 此时从左侧最后一个命中之后重新查找,直到与右侧的命中重合
+         */
+        private Hits join(Hits l, Hits r) {
+            int end = l.lastEnd();
+            int k = 0;
+            if (r.size > 0 && r.data[0] < end) {
+                CharSequence text = new DocumentText(document, 0, document.length);
+                Hits one = new Hits();
+                int at = end;
+                k = r.size;
+                while (at <= document.length) {
+                    one.size = 0;
+                    scan(text, at, document.length + 1, one, true);
+                    if (one.size == 0) {
+                        break;
+                    }
+                    int s = one.data[0];
+                    int e = one.data[1];
+                    int i = indexOf(r, s, e);
+                    if (i >= 0) {
+                        k = i;
+                        break;
+                    }
+                    l.add(s, e);
+                    at = e == s ? e + 1 : e;
+                }
+            }
+            for (; k < r.size; k += 2) {
+                l.add(r.data[k], r.data[k + 1]);
+            }
+            return l;
+        }
+
+        private int indexOf(Hits r, int s, int e) {
+            int lo = 0;
+            int hi = r.size / 2 - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int v = r.data[mid * 2];
+                if (v < s) {
+                    lo = mid + 1;
+                } else if (v > s) {
+                    hi = mid - 1;
+                } else {
+                    return r.data[mid * 2 + 1] == e ? mid * 2 : -1;
+                }
+            }
+            return -1;
+        }
+
+    }
+
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 文档在某一时刻的不可变视图. 快照与文档共享结构,可以在任意线程中读取,
+ * 文档此后的修改不会影响快照
+ *
+ * @author 823984418@qq.com
+ */
+public final class Snapshot implements CharSequence {
+
+    /**
+     * 持久化树堆的结点,同时是一行不可变的内容.
+     */
+    static final class Node implements CharSequence {
+
+        final Node left;
+
+        final Node right;
+
+        final int priority;
+
+        /**
+         * 子树行数.
+         */
+        final int count;
+
+        /**
+         * 子树字符数,不包括换行符.
+         */
+        final int size;
+
+        final char[] text;
+
+        /**
+         * 以Latin-1存储的内容. 不为{@code null}时内容位于此而非{@link #text}
+         */
+        final byte[] bytes;
+
+        /**
+         * 内容所在的分页. 不为{@code null}时内容在使用时从分页载入
+         */
+        final Page page;
+
+        final int base;
+
+        final int length;
+
+        Node(Node left, Node right, int priority, char[] text, byte[] bytes, int base, int length) {
+            this(left, right, priority, text, bytes, null, base, length);
+        }
+
+        Node(Node left, Node right, int priority, Page page, int base, int length) {
+            this(left, right, priority, null, null, page, base, length);
+        }
+
+        private Node(Node left, Node right, int priority, char[] text, byte[] bytes, Page page, int base, int length) {
+            this.left = left;
+            this.right = right;
+            this.priority = priority;
+            this.text = text;
+            this.bytes = bytes;
+            this.page = page;
+            this.base = base;
+            this.length = length;
+            int c = 1;
+            int s = length;
+            if (left != null) {
+                c += left.count;
+                s += left.size;
+            }
+            if (right != null) {
+                c += right.count;
+                s += right.size;
+            }
+            this.count = c;
+            this.size = s;
+        }
+
+        Node with(Node l, Node r) {
+            return new Node(l, r, priority, text, bytes, page, base, length);
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException();
+            }
+            return get(index);
+        }
+
+        char get(int index) {
+            Object a = array();
+            return a instanceof byte[] ? (char) (((byte[]) a)[base + index] & 0xFF) : ((char[]) a)[base + index];
+        }
+
+        /**
+         * 获取内容所在的缓冲.
+         *
+         * @return {@code byte[]}或{@code char[]}
+         */
+        Object array() {
+            if (page != null) {
+                return page.use();
+            }
+            return bytes != null ? bytes : text;
+        }
+
+        @Override
+        public String subSequence(int start, int end) {
+            if (start < 0 || end < start || end > length) {
+                throw new IndexOutOfBoundsException();
+            }
+            Object a = array();
+            if (a instanceof byte[]) {
+                return new String((byte[]) a, base + start, end - start, StandardCharsets.ISO_8859_1);
+            }
+            return new String((char[]) a, base + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length);
+        }
+
+    }
+
+    static int count(Node node) {
+        return node == null ? 0 : node.count;
+    }
+
+    static int chars(Node node) {
+        return node == null ? 0 : node.size + node.count;
+    }
+
+    /**
+     * 最近访问的行,用于加速顺序访问.
+     */
+    private static final class Cursor {
+
+        final Node node;
+
+        final int start;
+
+        Cursor(Node node, int start) {
+            this.node = node;
+            this.start = start;
+        }
+
+    }
+
+    Snapshot(Node root) {
+        this.root = root;
+        this.length = root.size + root.count - 1;
+        this.cursor = new Cursor(root, chars(root.left));
+    }
+
+    final Node root;
+
+    private final int length;
+
+    private Cursor cursor;
+
+    /**
+     * 获取长度.
+     *
+     * @return 长度
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * 获取行数.
+     *
+     * @return 行数
+     */
+    public int getLineCount() {
+        return root.count;
+    }
+
+    /**
+     * 获取一行的内容.
+     *
+     * @param lineNumber 行号,从1计数
+     * @return 行的内容,不包括换行符
+     */
+    public CharSequence getLine(int lineNumber) {
+        if (lineNumber < 1 || lineNumber > root.count) {
+            throw new IndexOutOfBoundsException();
+        }
+        int index = lineNumber - 1;
+        Node t = root;
+        while (true) {
+            int lc = count(t.left);
+            if (index < lc) {
+                t = t.left;
+            } else if (index == lc) {
+                return t;
+            } else {
+                index -= lc + 1;
+                t = t.right;
+            }
+        }
+    }
+
+    /**
+     * 获取行首的位置.
+     *
+     * @param lineNumber 行号,从1计数
+     * @return 位置
+     */
+    public int getLineStart(int lineNumber) {
+        if (lineNumber < 1 || lineNumber > root.count) {
+            throw new IndexOutOfBoundsException();
+        }
+        int index = lineNumber - 1;
+        int pos = 0;
+        Node t = root;
+        while (true) {
+            int lc = count(t.left);
+            if (index < lc) {
+                t = t.left;
+            } else if (index == lc) {
+                return pos + chars(t.left);
+            } else {
+                index -= lc + 1;
+                pos += chars(t.left) + t.length + 1;
+                t = t.right;
+            }
+        }
+    }
+
+    /**
+     * 获取位置所在的行号. 行尾位置归属于该行
+     *
+     * @param pos 位置
+     * @return 行号,从1计数
+     */
+    public int getLineNumber(int pos) {
+        if (pos < 0 || pos > length) {
+            throw new IndexOutOfBoundsException();
+        }
+        int line = 1;
+        Node t = root;
+        while (true) {
+            int lc = chars(t.left);
+            if (pos < lc) {
+                t = t.left;
+            } else {
+                pos -= lc;
+                line += count(t.left);
+                if (pos <= t.length || t.right == null) {
+                    return line;
+                }
+                pos -= t.length + 1;
+                line++;
+                t = t.right;
+            }
+        }
+    }
+
+    private Cursor seek(int pos) {
+        Cursor c = cursor;
+        if (pos >= c.start && pos <= c.start + c.node.length) {
+            return c;
+        }
+        int start = 0;
+        Node t = root;
+        while (true) {
+            int lc = chars(t.left);
+            if (pos < lc) {
+                t = t.left;
+            } else {
+                pos -= lc;
+                start += lc;
+                if (pos <= t.length || t.right == null) {
+                    c = new Cursor(t, start);
+                    cursor = c;
+                    return c;
+                }
+                pos -= t.length + 1;
+                start += t.length + 1;
+                t = t.right;
+            }
+        }
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException();
+        }
+        Cursor c = seek(index);
+        int offset = index - c.start;
+        return offset == c.node.length ? '\n' : c.node.get(offset);
+    }
+
+    @Override
+    public String subSequence(int start, int end) {
+        if (start < 0 || end < start || end > length) {
+            throw new IndexOutOfBoundsException();
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        append(root, 0, start, end, sb);
+        return sb.toString();
+    }
+
+    /**
+     * 按中序将与范围相交的内容写入.
+     *
+     * @return 子树之后的位置
+     */
+    private static int append(Node t, int pos, int start, int end, StringBuilder sb) {
+        if (t == null || pos >= end || pos + chars(t) <= start) {
+            return pos + chars(t);
+        }
+        pos = append(t.left, pos, start, end, sb);
+        int from = Math.max(start, pos);
+        int to = Math.min(end, pos + t.length);
+        if (from < to) {
+            Object a = t.array();
+            if (a instanceof byte[]) {
+                sb.append(t.subSequence(from - pos, to - pos));
+            } else {
+                sb.append((char[]) a, t.base + from - pos, to - from);
+            }
+        }
+        pos += t.length;
+        if (pos >= start && pos < end) {
+            sb.append('\n');
+        }
+        pos++;
+        return append(t.right, pos, start, end, sb);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length);
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.util.ArrayList;
+
+/**
+ * 维护与文档同步的持久化树堆. 每次编辑只复制被修改的行到根的路径,
+ * 因此获取快照只需引用当前的根
+ *
+ * @author 823984418@qq.com
+ */
+final class SnapshotIndex {
+
+    Snapshot.Node root;
+
+    /**
+     * 上次获取快照之后被引用了缓冲的行. 获取快照时将它们标记为共享
+     */
+    private final ArrayList<Line> captured = new ArrayList<>();
+
+    private Snapshot last;
+
+    private int seed = 0x6C8E9CF5;
+
+    private Snapshot.Node splitLeft;
+
+    private Snapshot.Node splitRight;
+
+    /**
+     * 从文档当前的所有行构建.
+     *
+     * @param document 文档
+     */
+    SnapshotIndex(Document document) {
+        root = build(document.headLine, document.lineCount);
+    }
+
+    /**
+     * 获取快照.
+     *
+     * @return 快照
+     */
+    Snapshot snapshot() {
+        for (int i = 0, n = captured.size(); i < n; i++) {
+            captured.get(i).shared = true;
+        }
+        captured.clear();
+        if (last == null || last.root != root) {
+            last = new Snapshot(root);
+        }
+        return last;
+    }
+
+    /**
+     * 将序号在{@code [from,from+remove)}的行替换为从{@code first}开始的若干行.
+     *
+     * @param from 开始序号
+     * @param remove 移除的行数
+     * @param first 第一个新的行
+     * @param insert 新的行数
+     */
+    void replace(int from, int remove, Line first, int insert) {
+        if (remove == 1 && insert == 1) {
+            //只修改了一行时沿路径复制,不必分割与合并
+            root = set(root, from, first);
+            return;
+        }
+        split(root, from);
+        Snapshot.Node a = splitLeft;
+        split(splitRight, remove);
+        Snapshot.Node c = splitRight;
+        root = merge(merge(a, build(first, insert)), c);
+        if (captured.size() > 1024 && captured.size() > root.count) {
+            //提前标记为共享总是安全的,只是之后的修改需要复制
+            for (int i = 0, n = captured.size(); i < n; i++) {
+                captured.get(i).shared = true;
+            }
+            captured.clear();
+        }
+    }
+
+    private Snapshot.Node set(Snapshot.Node t, int k, Line line) {
+        int lc = Snapshot.count(t.left);
+        if (k < lc) {
+            return t.with(set(t.left, k, line), t.right);
+        }
+        if (k > lc) {
+            return t.with(t.left, set(t.right, k - lc - 1, line));
+        }
+        return node(t.left, t.right, t.priority, line);
+    }
+
+    private int nextPriority() {
+        int x = seed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        seed = x;
+        return x;
+    }
+
+    private void split(Snapshot.Node t, int k) {
+        if (t == null) {
+            splitLeft = splitRight = null;
+            return;
+        }
+        int lc = Snapshot.count(t.left);
+        if (k <= lc) {
+            split(t.left, k);
+            splitRight = t.with(splitRight, t.right);
+        } else {
+            split(t.right, k - lc - 1);
+            splitLeft = t.with(t.left, splitLeft);
+        }
+    }
+
+    private static Snapshot.Node merge(Snapshot.Node a, Snapshot.Node b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            return a.with(a.left, merge(a.right, b));
+        } else {
+            return b.with(merge(a, b.left), b.right);
+        }
+    }
+
+    private Snapshot.Node build(Line first, int size) {
+        if (size == 0) {
+            return null;
+        }
+        Line[] lines = new Line[size];
+        Line l = first;
+        for (int i = 0; i < size; i++, l = l.next) {
+            lines[i] = l;
+        }
+        return build(lines, 0, size);
+    }
+
+    /**
+     * 以中点为根构建平衡的子树,优先级取自身与子结点的最大值以保持堆序.
+     */
+    private Snapshot.Node build(Line[] lines, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        Snapshot.Node l = build(lines, from, mid);
+        Snapshot.Node r = build(lines, mid + 1, to);
+        int p = nextPriority();
+        if (l != null && l.priority > p) {
+            p = l.priority;
+        }
+        if (r != null && r.priority > p) {
+            p = r.priority;
+        }
+        return node(l, r, p, lines[mid]);
+    }
+
+    /**
+     * 构建引用一行当前内容的结点.
+     */
+    private Snapshot.Node node(Snapshot.Node l, Snapshot.Node r, int p, Line line) {
+        if (!line.shared) {
+            captured.add(line);
+        }
+        if (line.page != null) {
+            return new Snapshot.Node(l, r, p, line.page, line.base, line.length);
+        }
+        return new Snapshot.Node(l, r, p, line.buff, line.bytes, line.base, line.length);
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+/**
+ * 可合并的行摘要. 文档为每棵子树维护摘要,修改时只重新计算被修改的行和到根的路径
+ *
+ * @author 823984418@qq.com
+ * @param <S> 摘要的类型,应当不可变
+ * @see Document#addSummary(Summary)
+ */
+public interface Summary<S> {
+
+    /**
+     * 统计以空白字符分隔的单词数.
+     */
+    Summary<Long> WORDS = new LineCount(true);
+
+    /**
+     * 统计码点数,不包括换行符.
+     */
+    Summary<Long> CODE_POINTS = new LineCount(false);
+
+    /**
+     * 获取不包含任何行的摘要.
+     *
+     * @return 摘要,不能为{@code null}
+     */
+    S identity();
+
+    /**
+     * 计算一行的摘要.
+     *
+     * @param line 行
+     * @return 摘要,不能为{@code null}
+     */
+    S of(Line line);
+
+    /**
+     * 合并相邻的摘要. 必须满足结合律
+     *
+     * @param left 在前的摘要
+     * @param right 在后的摘要
+     * @return 合并的摘要
+     */
+    S merge(S left, S right);
+
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.util.Arrays;
+
+/**
+ * 撤销日志. 每条记录只保存被删除和被插入的内容及其位置,
+ * 记录以整数数组紧凑储存,内容储存在一个共用的字符数组中
+ * <p>
+ * 记录{@code [0,cursor)}可以撤销,{@code [cursor,count)}可以重做
+ *
+ * @author 823984418@qq.com
+ */
+final class UndoJournal {
+
+    /**
+     * 每条记录占用的整数个数.
+     */
+    private static final int STRIDE = 5;
+
+    private static final int POS = 0;
+
+    private static final int REMOVED = 1;
+
+    private static final int INSERTED = 2;
+
+    private static final int TEXT = 3;
+
+    private static final int FLAGS = 4;
+
+    /**
+     * 与上一条记录一同撤销.
+     */
+    private static final int CHAINED = 1;
+
+    /**
+     * 连续输入,后续的输入可以合并到此记录.
+     */
+    private static final int TYPING = 2;
+
+    /**
+     * 连续删除,后续的删除可以合并到此记录.
+     */
+    private static final int DELETING = 4;
+
+    /**
+     * 合并后的记录的最大字符数.
+     */
+    private static final int MERGE_LIMIT = 1024;
+
+    /**
+     * 构建一个撤销日志.
+     *
+     * @param limit 内存预算,字节
+     */
+    UndoJournal(long limit) {
+        this.limit = limit;
+    }
+
+    long limit;
+
+    private int[] records = new int[STRIDE * 16];
+
+    private char[] text = new char[256];
+
+    int count;
+
+    int cursor;
+
+    /**
+     * 正在记录的组的嵌套深度.
+     */
+    private int group;
+
+    /**
+     * 组中是否已有记录.
+     */
+    private boolean grouped;
+
+    /**
+     * 当前组的第一条记录的下标.
+     */
+    private int groupStart;
+
+    /**
+     * 设置内存预算.
+     *
+     * @param limit 字节数
+     */
+    void setLimit(long limit) {
+        this.limit = limit;
+        breakMerge();
+        trim();
+    }
+
+    /**
+     * 估计占用的字节数.
+     *
+     * @return 字节数
+     */
+    long bytes() {
+        return (long) textEnd(count) * 2 + (long) count * STRIDE * 4;
+    }
+
+    private int textEnd(int n) {
+        if (n == 0) {
+            return 0;
+        }
+        int r = (n - 1) * STRIDE;
+        return records[r + TEXT] + records[r + REMOVED] + records[r + INSERTED];
+    }
+
+    /**
+     * 开始一个组,组内的记录一同撤销.
+     */
+    void beginGroup() {
+        if (group++ == 0) {
+            grouped = false;
+            groupStart = cursor;
+        }
+    }
+
+    /**
+     * 结束一个组.
+     */
+    void endGroup() {
+        if (--group == 0) {
+            trim();
+        }
+    }
+
+    /**
+     * 结束合并,此后的编辑记录为新的记录.
+     */
+    void breakMerge() {
+        if (cursor > 0) {
+            records[(cursor - 1) * STRIDE + FLAGS] &= ~(TYPING | DELETING);
+        }
+    }
+
+    /**
+     * 记录一次替换. 必须在文档修改之前调用
+     *
+     * @param sl 开始行
+     * @param so 开始偏移
+     * @param pos 开始位置
+     * @param removed 删除的字符数
+     * @param src 插入的内容
+     * @param begin 内容开始
+     * @param srcEnd 内容结束
+     */
+    void record(Line sl, int so, int pos, int removed, char[] src, int begin, int srcEnd) {
+        int inserted = srcEnd - begin;
+        if (removed == 0 && inserted == 0) {
+            return;
+        }
+        count = cursor;
+        if (group == 0 && count > 0 && merge(sl, so, pos, removed, src, begin, srcEnd)) {
+            return;
+        }
+        int flags = 0;
+        if (group > 0) {
+            if (grouped) {
+                flags |= CHAINED;
+            }
+            grouped = true;
+        } else if (removed == 0 && find(src, begin, srcEnd) == -1) {
+            flags |= TYPING;
+        } else if (inserted == 0) {
+            flags |= DELETING;
+        }
+        int at = textEnd(count);
+        ensureText(at + removed + inserted);
+        Document.copy(sl, so, removed, text, at);
+        System.arraycopy(src, begin, text, at + removed, inserted);
+        if (records.length < (count + 1) * STRIDE) {
+            records = Arrays.copyOf(records, records.length * 2);
+        }
+        int r = count * STRIDE;
+        records[r + POS] = pos;
+        records[r + REMOVED] = removed;
+        records[r + INSERTED] = inserted;
+        records[r + TEXT] = at;
+        records[r + FLAGS] = flags;
+        cursor = ++count;
+        trim();
+    }
+
+    /**
+     * 尝试将编辑合并到最后一条记录.
+     */
+    private boolean merge(Line sl, int so, int pos, int removed, char[] src, int begin, int srcEnd) {
+        int inserted = srcEnd - begin;
+        int r = (count - 1) * STRIDE;
+        int flags = records[r + FLAGS];
+        int lp = records[r + POS];
+        int lr = records[r + REMOVED];
+        int li = records[r + INSERTED];
+        int at = records[r + TEXT];
+        if (lr + li + removed + inserted > MERGE_LIMIT) {
+            return false;
+        }
+        if ((flags & TYPING) != 0 && removed == 0 && pos == lp + li && find(src, begin, srcEnd) == -1) {
+            ensureText(at + li + inserted);
+            System.arraycopy(src, begin, text, at + li, inserted);
+            records[r + INSERTED] = li + inserted;
+        } else if ((flags & DELETING) != 0 && inserted == 0 && pos == lp) {
+            ensureText(at + lr + removed);
+            Document.copy(sl, so, removed, text, at + lr);
+            records[r + REMOVED] = lr + removed;
+        } else if ((flags & DELETING) != 0 && inserted == 0 && pos + removed == lp) {
+            ensureText(at + lr + removed);
+            System.arraycopy(text, at, text, at + removed, lr);
+            Document.copy(sl, so, removed, text, at);
+            records[r + POS] = pos;
+            records[r + REMOVED] = lr + removed;
+        } else {
+            return false;
+        }
+        trim();
+        return true;
+    }
+
+    private static int find(char[] src, int begin, int srcEnd) {
+        for (int i = begin; i < srcEnd; i++) {
+            if (src[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void ensureText(int size) {
+        if (size > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, size));
+        }
+    }
+
+    /**
+     * 丢弃最早的记录直到不超过预算. 只在组的边界处丢弃,
+     * 正在记录的组不会被丢弃,组结束时再检查预算
+     */
+    private void trim() {
+        if (bytes() <= limit) {
+            return;
+        }
+        int max = group > 0 ? groupStart : count;
+        long target = limit - limit / 4;
+        int drop = 0;
+        long dropped = 0;
+        long total = bytes();
+        while (drop < max && total - dropped > target) {
+            int r = drop * STRIDE;
+            dropped += (long) (records[r + REMOVED] + records[r + INSERTED]) * 2 + STRIDE * 4;
+            drop++;
+        }
+        //不拆分组
+        while (drop < max && (records[drop * STRIDE + FLAGS] & CHAINED) != 0) {
+            drop++;
+        }
+        if (drop == 0) {
+            return;
+        }
+        int shift = drop == count ? textEnd(count) : records[drop * STRIDE + TEXT];
+        int used = textEnd(count);
+        System.arraycopy(text, shift, text, 0, used - shift);
+        System.arraycopy(records, drop * STRIDE, records, 0, (count - drop) * STRIDE);
+        count -= drop;
+        cursor = Math.max(0, cursor - drop);
+        groupStart = Math.max(0, groupStart - drop);
+        for (int i = 0; i < count; i++) {
+            records[i * STRIDE + TEXT] -= shift;
+        }
+        if (count == 0) {
+            grouped = false;
+        }
+        if (text.length > 1024 && used - shift < text.length / 4) {
+            text = Arrays.copyOf(text, Math.max(1024, (used - shift) * 2));
+        }
+    }
+
+    /**
+     * 撤销上一组记录.
+     *
+     * @param document 文档
+     * @return 是否有可以撤销的记录
+     */
+    boolean undo(Document document) {
+        if (cursor == 0) {
+            return false;
+        }
+        int flags;
+        do {
+            int r = --cursor * STRIDE;
+            int pos = records[r + POS];
+            int at = records[r + TEXT];
+            int removed = records[r + REMOVED];
+            document.replace(pos, pos + records[r + INSERTED], text, at, at + removed);
+            flags = records[r + FLAGS];
+        } while ((flags & CHAINED) != 0 && cursor > 0);
+        breakMerge();
+        return true;
+    }
+
+    /**
+     * 重做下一组记录.
+     *
+     * @param document 文档
+     * @return 是否有可以重做的记录
+     */
+    boolean redo(Document document) {
+        if (cursor == count) {
+            return false;
+        }
+        do {
+            int r = cursor++ * STRIDE;
+            int pos = records[r + POS];
+            int at = records[r + TEXT] + records[r + REMOVED];
+            document.replace(pos, pos + records[r + REMOVED], text, at, at + records[r + INSERTED]);
+        } while (cursor < count && (records[cursor * STRIDE + FLAGS] & CHAINED) != 0);
+        breakMerge();
+        return true;
+    }
+
+    /**
+     * 撤销并丢弃当前组中已有的记录. 组中的编辑失败时用于恢复文档,调用时文档不得再向此日志记录
+     *
+     * @param document 文档
+     */
+    void rollback(Document document) {
+        while (cursor > groupStart) {
+            int r = --cursor * STRIDE;
+            int pos = records[r + POS];
+            int at = records[r + TEXT];
+            document.replace(pos, pos + records[r + INSERTED], text, at, at + records[r + REMOVED]);
+        }
+        count = cursor;
+        grouped = false;
+    }
+
+    /**
+     * 清空所有记录.
+     */
+    void clear() {
+        count = cursor = 0;
+        grouped = false;
+        records = new int[STRIDE * 16];
+        text = new char[256];
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+/**
+ * 自动换行的布局. 每行按显示列在{@code width}处折行,各行占据的显示行数作为行树的统计信息维护,
+ * 从显示行查找行和从行查找显示行都只需对数时间. 修改只重新计算受影响的行
+ * <p>
+ * 一个文档同时只能有一个布局
+ *
+ * @author 823984418@qq.com
+ */
+public final class WrapLayout {
+
+    /**
+     * 为文档创建布局. 需要线性时间计算所有行
+     *
+     * @param document 文档
+     * @param width 每个显示行的列数
+     * @param tabSize 制表符宽度
+     */
+    public WrapLayout(Document document, int width, int tabSize) {
+        if (document.wrap != null) {
+            throw new IllegalStateException("document already has a wrap layout");
+        }
+        check(width, tabSize);
+        this.document = document;
+        this.width = width;
+        this.tabSize = tabSize;
+        document.wrap = this;
+        layoutAll();
+    }
+
+    private final Document document;
+
+    private int width;
+
+    private int tabSize;
+
+    private static void check(int width, int tabSize) {
+        if (width <= 0 || tabSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * 重新计算被修改的行. 在通知监听器之前调用
+     *
+     * @param first 第一个被修改的行
+     * @param lines 之后被修改的行数
+     */
+    void update(Line first, int lines) {
+        Line line = first;
+        for (int i = lines; i >= 0; i--) {
+            line.rows = rows(line);
+            document.tree.resize(line);
+            line = line.next;
+        }
+    }
+
+    private void layoutAll() {
+        for (Line line = document.headLine; line != null; line = line.next) {
+            line.rows = width == Integer.MAX_VALUE ? 1 : rows(line);
+        }
+        document.tree.refresh(document.tree.root);
+    }
+
+    /**
+     * 计算一行占据的显示行数.
+     *
+     * @param line 行
+     * @return 显示行数
+     */
+    private int rows(Line line) {
+        if ((long) line.length * Math.max(tabSize, 2) <= width) {
+            return 1;
+        }
+        int columns = line.getVisualColumn(line.length, tabSize);
+        return columns <= width ? 1 : (columns - 1) / width + 1;
+    }
+
+    /**
+     * 修改每个显示行的列数和制表符宽度. 需要线性时间重新计算所有行
+     *
+     * @param width 每个显示行的列数
+     * @param tabSize 制表符宽度
+     */
+    public void setWidth(int width, int tabSize) {
+        check(width, tabSize);
+        if (width != this.width || tabSize != this.tabSize) {
+            this.width = width;
+            this.tabSize = tabSize;
+            layoutAll();
+        }
+    }
+
+    /**
+     * 获取每个显示行的列数.
+     *
+     * @return 列数
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * 获取制表符宽度.
+     *
+     * @return 宽度
+     */
+    public int getTabSize() {
+        return tabSize;
+    }
+
+    /**
+     * 获取显示行的总数.
+     *
+     * @return 显示行数
+     */
+    public int getRowCount() {
+        return LineTree.rows(document.tree.root);
+    }
+
+    /**
+     * 获取一行占据的显示行数.
+     *
+     * @param lineNumber 行号,从1计数
+     * @return 显示行数
+     */
+    public int getRows(int lineNumber) {
+        return document.getLine(lineNumber).rows;
+    }
+
+    /**
+     * 获取行的第一个显示行.
+     *
+     * @param lineNumber 行号,从1计数
+     * @return 显示行,从0计数
+     */
+    public int getFirstRow(int lineNumber) {
+        return LineTree.rowOf(document.getLine(lineNumber));
+    }
+
+    /**
+     * 获取包含显示行的行号.
+     *
+     * @param row 显示行,从0计数
+     * @return 行号,从1计数
+     */
+    public int getLineNumberOfRow(int row) {
+        if (row < 0 || row >= getRowCount()) {
+            throw new IndexOutOfBoundsException(row);
+        }
+        return LineTree.indexOf(document.tree.getByRow(row)) + 1;
+    }
+
+    /**
+     * 获取包含显示行的行.
+     *
+     * @param row 显示行,从0计数
+     * @return 行
+     */
+    public Line getLineOfRow(int row) {
+        if (row < 0 || row >= getRowCount()) {
+            throw new IndexOutOfBoundsException(row);
+        }
+        return document.tree.getByRow(row);
+    }
+
+    /**
+     * 停止维护布局. 所有行恢复为占据一个显示行
+     */
+    public void dispose() {
+        if (document.wrap == this) {
+            document.wrap = null;
+            width = Integer.MAX_VALUE;
+            layoutAll();
+        }
+    }
+
+}
@@ -25,7 +25,8 @@
  */
 /**
  * 编辑器文档对象模型.
- * 提供了一个{@link Document}作为编辑器的内容. 使用{@link Line}作为储存行的链表结点
- * {@link Document}使用弱引用维护了所有指向它的{@link Pointer},同步其行号和偏移.
+ * 提供了一个{@link Document}作为编辑器的内容. 使用{@link Line}作为储存行的链表结点,
+ * 同时以平衡树索引行,使按行号和位置定位只需对数时间.
+ * 每个{@link Line}以弱引用登记了位于其上的{@link Pointer},编辑时只需同步被编辑行上的指针.
  */
 package net.dxzc.edo;
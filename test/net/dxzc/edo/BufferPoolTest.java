@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+/**
+ *
+ * @author 823984418@qq.com
+ */
+public class BufferPoolTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        long base = BufferPool.getRetainedBytes();
+        for (int i = 0; i < 50; i++) {
+            Thread t = new Thread(() -> {
+                for (int k = 0; k < 10; k++) {
+                    BufferPool.release(BufferPool.chars(1024));
+                    BufferPool.release(new byte[512]);
+                }
+            });
+            t.start();
+            t.join();
+        }
+        //已结束的线程不再计入
+        check(BufferPool.getRetainedBytes() == base, "dead threads " + BufferPool.getRetainedBytes());
+        BufferPool.release(new char[1024]);
+        check(BufferPool.getRetainedBytes() == base + 2048, "live thread");
+        BufferPool.clear();
+        check(BufferPool.getRetainedBytes() == 0, "clear");
+        System.out.println("ok");
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+}
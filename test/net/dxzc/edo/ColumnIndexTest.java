@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ *
+ * @author 823984418@qq.com
+ */
+public class ColumnIndexTest {
+
+    private static final String[] PIECES = {
+        "a", "b", " ", "\t", "é", "ÿ", "中", "\u0301", "\uD83D\uDE00", "\uD83D", "\uDE00", "\u200B", "가"
+    };
+
+    public static void main(String[] args) {
+        check(ColumnIndex.width('a') == 1 && ColumnIndex.width('中') == 2 && ColumnIndex.width(0x301) == 0
+                && ColumnIndex.width(0x1F600) == 2, "width");
+        Document d = new Document();
+        Line l = d.getLine(1);
+        d.replace(0, 0, "a\tb中\t".toCharArray(), 0, 5);
+        check(l.getVisualColumn(2, 4) == 4 && l.getVisualColumn(4, 4) == 7 && l.getVisualColumn(5, 4) == 8, "tabs");
+        check(l.getVisualColumn(5, 8) == 16, "tab size");
+
+        Random r = new Random(18);
+        for (int round = 0; round < 400; round++) {
+            //一半的行只含有Latin-1字符,以字节存储
+            boolean latin1 = r.nextBoolean();
+            StringBuilder sb = new StringBuilder();
+            int n = r.nextInt(1000);
+            while (sb.length() < n) {
+                String p = PIECES[r.nextInt(latin1 ? 6 : PIECES.length)];
+                sb.append(p);
+            }
+            String s = sb.toString();
+            d = new Document();
+            d.replace(0, 0, s.toCharArray(), 0, s.length());
+            l = d.getLine(1);
+            check(l.isLatin1() == (latin1 && !s.isEmpty()), "storage");
+            int tab = 1 + r.nextInt(8);
+            compare(l, s, tab, r, "round " + round);
+            //修改内容和制表符宽度后换算表失效
+            int at = r.nextInt(s.length() + 1);
+            String p = PIECES[r.nextInt(PIECES.length)];
+            d.replace(at, at, p.toCharArray(), 0, p.length());
+            s = s.substring(0, at) + p + s.substring(at);
+            compare(l, s, tab, r, "edited " + round);
+            compare(l, s, tab + 1, r, "tab " + round);
+        }
+        System.out.println("ok");
+    }
+
+    private static void compare(Line l, String s, int tab, Random r, String message) {
+        int[][] expect = naive(s, tab);
+        int n = s.length();
+        for (int i = 0; i <= n; i++) {
+            check(l.getCodePointOffset(i) == s.codePointCount(0, i), message + " code points " + i);
+            check(l.getUtf8Offset(i) == expect[1][i], message + " utf8 " + i);
+            check(l.getVisualColumn(i, tab) == expect[2][i], message + " column " + i);
+        }
+        if (wellFormed(s)) {
+            check(l.getUtf8Offset(n) == s.getBytes(StandardCharsets.UTF_8).length, message + " utf8 length");
+        }
+        for (int kind = 0; kind < 3; kind++) {
+            int max = expect[kind][n];
+            for (int k = 0; k < 40; k++) {
+                int v = k == 0 ? -1 : k == 1 ? max + 1 : r.nextInt(max + 1);
+                int got = kind == 0 ? l.offsetOfCodePoint(v) : kind == 1 ? l.offsetOfUtf8(v) : l.offsetOfVisualColumn(v, tab);
+                check(got == inverse(s, expect[kind], v), message + " inverse " + kind + " " + v);
+            }
+        }
+    }
+
+    /**
+     * 从头扫描的码点数,字节数和显示列. 代理对在高位代理处计入
+     */
+    private static int[][] naive(String s, int tab) {
+        int n = s.length();
+        int[][] v = new int[3][n + 1];
+        int cps = 0;
+        int bytes = 0;
+        int cols = 0;
+        for (int i = 0; i < n;) {
+            char c = s.charAt(i);
+            int w;
+            if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = s.codePointAt(i);
+                cps++;
+                bytes += 4;
+                cols += ColumnIndex.width(cp);
+                w = 2;
+            } else {
+                cps++;
+                bytes += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+                cols = c == '\t' ? cols + tab - cols % tab : cols + ColumnIndex.width(c);
+                w = 1;
+            }
+            for (int k = 1; k <= w; k++) {
+                v[0][i + k] = cps;
+                v[1][i + k] = bytes;
+                v[2][i + k] = cols;
+            }
+            i += w;
+        }
+        return v;
+    }
+
+    /**
+     * 值不超过{@code value}的最大的不在代理对中间的偏移.
+     */
+    private static int inverse(String s, int[] values, int value) {
+        int best = 0;
+        for (int i = 0; i <= s.length(); i++) {
+            boolean inside = i > 0 && i < s.length() && Character.isHighSurrogate(s.charAt(i - 1))
+                    && Character.isLowSurrogate(s.charAt(i));
+            if (!inside && values[i] <= value) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static boolean wellFormed(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+}
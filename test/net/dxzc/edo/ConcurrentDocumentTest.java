@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *
+ * @author 823984418@qq.com
+ */
+public class ConcurrentDocumentTest {
+
+    private static final int LINES = 200;
+
+    private static final int WIDTH = 40;
+
+    public static void main(String[] args) throws InterruptedException {
+        //每行由同一个字母重复组成,修改只整行替换,长度和行数不变
+        char[] model = new char[LINES];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            model[i] = 'a';
+            sb.append(i == 0 ? "" : "\n").append(line('a'));
+        }
+        Document document = new Document();
+        document.replace(0, 0, sb.toString().toCharArray(), 0, sb.length());
+        ConcurrentDocument d = new ConcurrentDocument(document);
+        int length = d.getLength();
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<List<ConcurrentDocument.Cursor>> kept = new ArrayList<>();
+        Thread[] readers = new Thread[3];
+        for (int t = 0; t < readers.length; t++) {
+            List<ConcurrentDocument.Cursor> cursors = new ArrayList<>();
+            kept.add(cursors);
+            Random r = new Random(t);
+            readers[t] = new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        read(d, r, length, cursors);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            readers[t].start();
+        }
+
+        Random r = new Random(23);
+        try {
+            for (int step = 0; step < 20000 && failure.get() == null; step++) {
+                int k = r.nextInt(LINES);
+                char c = (char) ('a' + r.nextInt(26));
+                int op = r.nextInt(10);
+                if (op == 0) {
+                    //批次同时替换多行
+                    int j = (k + 1 + r.nextInt(LINES - 1)) % LINES;
+                    char e = (char) ('a' + r.nextInt(26));
+                    d.edit(b -> b.replace(k * (WIDTH + 1), WIDTH, line(c)).replace(j * (WIDTH + 1), WIDTH, line(e)));
+                    model[k] = c;
+                    model[j] = e;
+                } else if (op == 1) {
+                    check(d.undo() && d.redo(), "undo and redo");
+                } else {
+                    d.replace(k * (WIDTH + 1), k * (WIDTH + 1) + WIDTH, line(c));
+                    model[k] = c;
+                }
+            }
+        } finally {
+            done.set(true);
+            for (Thread t : readers) {
+                t.join();
+            }
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        for (int i = 0; i < LINES; i++) {
+            check(d.getLineText(i + 1).equals(line(model[i])), "line " + (i + 1));
+        }
+        //游标的位置和所在行一致,行上登记的指针恰为未释放的游标
+        int alive = 0;
+        for (List<ConcurrentDocument.Cursor> cursors : kept) {
+            for (ConcurrentDocument.Cursor c : cursors) {
+                int pos = c.getPos();
+                check(pos >= 0 && pos <= length, "cursor pos");
+                check((c.getLineNumber() - 1) * (WIDTH + 1) + c.getOffset() == pos, "cursor line");
+                alive++;
+            }
+        }
+        int anchors = d.read(doc -> {
+            int n = 0;
+            for (Line l = doc.getLine(1); l != null; l = l.next) {
+                Line.Extra x = l.extra;
+                for (int i = 0; x != null && i < x.anchorCount; i++) {
+                    if (x.anchors[i].get() != null && x.anchors[i].slot == i) {
+                        n++;
+                    }
+                }
+            }
+            return n;
+        });
+        check(anchors == alive, "anchors " + anchors + " cursors " + alive);
+        System.out.println("ok");
+    }
+
+    private static void read(ConcurrentDocument d, Random r, int length, List<ConcurrentDocument.Cursor> cursors) {
+        check(d.getLength() == length && d.getLineCount() == LINES, "size");
+        int pos = r.nextInt(length);
+        char c = d.charAt(pos);
+        check(pos % (WIDTH + 1) == WIDTH ? c == '\n' : c >= 'a' && c <= 'z', "charAt " + pos);
+        int k = r.nextInt(LINES);
+        String s = d.getLineText(k + 1);
+        check(s.equals(line(s.charAt(0))), "line text");
+        String t = d.getText(k * (WIDTH + 1), k * (WIDTH + 1) + WIDTH);
+        check(t.equals(line(t.charAt(0))), "text");
+
+        ConcurrentDocument.Cursor cursor = d.createCursor(r.nextBoolean());
+        cursor.moveTo(r.nextInt(length + 1));
+        for (int i = 0; i < 20; i++) {
+            int x = cursor.readChar();
+            check(x == '\n' || x >= 'a' && x <= 'z' || x == -1, "cursor char");
+            int offset = cursor.getOffset();
+            check(offset >= 0 && offset <= WIDTH, "cursor offset");
+            if (r.nextBoolean()) {
+                cursor.move(r.nextInt(100) - 50);
+            } else {
+                cursor.lineMove(r.nextInt(5) - 2);
+            }
+        }
+        if (cursors.size() < 50 && r.nextInt(4) == 0) {
+            cursors.add(cursor);
+        } else {
+            cursor.dispose();
+        }
+    }
+
+    private static String line(char c) {
+        char[] a = new char[WIDTH];
+        Arrays.fill(a, c);
+        return new String(a);
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ *
+ * @author 823984418@qq.com
+ */
+public class DamageCollectorTest {
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        Random r = new Random(11);
+        Document d = new Document();
+        DamageCollector sync = new DamageCollector();
+        DamageCollector async = new DamageCollector();
+        ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+            Thread t = new Thread(task);
+            t.setDaemon(true);
+            return t;
+        });
+        d.addListener(sync);
+        d.addListener(async, executor);
+        check(sync.poll() == null, "empty");
+        for (int frame = 0; frame < 3000; frame++) {
+            String before = d.toString();
+            int edits = r.nextInt(6);
+            for (int i = 0; i < edits; i++) {
+                edit(r, d);
+            }
+            String after = d.toString();
+            verify(sync.poll(), before, after, "sync " + frame);
+            //串行的执行器按顺序送达修改,合并的结果相同
+            executor.submit(() -> {
+            }).get();
+            verify(async.poll(), before, after, "async " + frame);
+        }
+        executor.shutdown();
+        System.out.println("ok");
+    }
+
+    private static void edit(Random r, Document d) {
+        int len = d.getLength();
+        if (r.nextInt(4) == 0 && len > 10) {
+            //批次合并为一次修改
+            int p = r.nextInt(len / 2);
+            int q = len / 2 + r.nextInt(len - len / 2);
+            d.edit(b -> b.replace(p, 1, "a\nb").replace(q, r.nextInt(len - q + 1), "\n"));
+            return;
+        }
+        int s = r.nextInt(len + 1);
+        int e = s + r.nextInt(Math.min(len - s, 12) + 1);
+        String text = r.nextInt(3) == 0 ? "" : "xy\nz\n\n".substring(r.nextInt(6));
+        d.replace(s, e, text.toCharArray(), 0, text.length());
+    }
+
+    /**
+     * 合并的范围应用到修改前的内容上应得到修改后的内容,行号和行数与内容一致.
+     */
+    private static void verify(DocumentEvent e, String before, String after, String message) {
+        if (before.equals(after) && e == null) {
+            return;
+        }
+        check(e != null, message + " missing");
+        int s = e.getStartPos();
+        int removed = e.getRemovedChars();
+        int inserted = e.getInsertedChars();
+        check(s >= 0 && s + removed <= before.length() && s + inserted <= after.length(), message + " range");
+        String rebuilt = before.substring(0, s) + after.substring(s, s + inserted) + before.substring(s + removed);
+        check(rebuilt.equals(after), message + " content");
+        check(e.getStartLine() == lines(before, 0, s) + 1, message + " start line");
+        check(e.getRemovedLines() == lines(before, s, s + removed), message + " removed lines");
+        check(e.getInsertedLines() == lines(after, s, s + inserted), message + " inserted lines");
+    }
+
+    private static int lines(String s, int from, int to) {
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == '\n') {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ *
+ * @author 823984418@qq.com
+ */
+public class EditJournalTest {
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        try {
+            StringBuilder sb = new StringBuilder();
+            while (sb.length() < 1 << 20) {
+                sb.append("line ").append(sb.length()).append('\n');
+            }
+            Document d = new Document();
+            d.replace(0, 0, sb.toString().toCharArray(), 0, sb.length());
+            EditJournal journal = EditJournal.open(d, dir, EditJournal.Sync.ALWAYS, 1);
+            journal.setCheckpointBytes(Long.MAX_VALUE);
+
+            //批次的记录只与编辑的字节数相关,与跨越的范围无关
+            int length = d.getLength();
+            d.edit(b -> b.replace(0, 1, "X").replace(length - 1, 1, "Y"));
+            check(journal.getJournalBytes() < 64, "batch bytes " + journal.getJournalBytes());
+
+            Random r = new Random(25);
+            for (int round = 0; round < 50; round++) {
+                int len = d.getLength();
+                int k = 1 + r.nextInt(8);
+                d.edit(b -> {
+                    for (int i = 0; i < k; i++) {
+                        int p = (int) ((long) len * i / k);
+                        b.replace(p, r.nextInt(3), "ab\ncd".substring(r.nextInt(5)));
+                    }
+                    b.insert(len, "z");
+                });
+                if (r.nextInt(5) == 0) {
+                    d.undo();
+                }
+            }
+            journal.flush();
+            Document recovered = Document.recover(dir);
+            check(recovered.toString().equals(d.toString()), "recover");
+            check(!recovered.canUndo(), "no undo after recovery");
+            check(recovered.getUndoLimit() == Document.DEFAULT_UNDO_LIMIT, "undo limit");
+            journal.close();
+        } finally {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                for (Path p : ds) {
+                    Files.delete(p);
+                }
+            }
+            Files.delete(dir);
+        }
+        System.out.println("ok");
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.util.Random;
+
+/**
+ *
+ * @author 823984418@qq.com
+ */
+public class IncrementalLexerTest {
+
+    /**
+     * 块注释的分析器. 状态为行结束时是否在注释中
+     */
+    private static final class CommentLexer implements Lexer<Boolean> {
+
+        int calls;
+
+        @Override
+        public Boolean initial() {
+            return false;
+        }
+
+        @Override
+        public Boolean lex(Line line, Boolean state) {
+            calls++;
+            return scan(line.toString(), state);
+        }
+
+        static boolean scan(String s, boolean in) {
+            for (int i = 0; i + 1 < s.length(); i++) {
+                if (!in && s.charAt(i) == '/' && s.charAt(i + 1) == '*') {
+                    in = true;
+                    i++;
+                } else if (in && s.charAt(i) == '*' && s.charAt(i + 1) == '/') {
+                    in = false;
+                    i++;
+                }
+            }
+            return in;
+        }
+
+    }
+
+    public static void main(String[] args) {
+        Random r = new Random(12);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append(i % 100 == 0 ? "a /* b" : i % 100 == 50 ? "c */ d" : "code;").append('\n');
+        }
+        Document d = new Document();
+        d.replace(0, 0, sb.toString().toCharArray(), 0, sb.length());
+        CommentLexer lexer = new CommentLexer();
+        IncrementalLexer<Boolean> incremental = new IncrementalLexer<>(d, lexer);
+        check(incremental.isDirty(), "initially dirty");
+        check(incremental.relex(Long.MAX_VALUE), "full");
+        check(!incremental.isDirty() && incremental.getDirtyLine() == -1, "clean");
+        verify(d, d.getLineCount(), "full");
+
+        //不改变状态的修改只重新分析受影响的行
+        lexer.calls = 0;
+        int p = LineTree.startOf(d.getLine(10000));
+        d.replace(p, p, "x".toCharArray(), 0, 1);
+        check(incremental.getDirtyLine() == 10000, "dirty line");
+        incremental.relex(Long.MAX_VALUE);
+        check(lexer.calls <= 2, "local edit lexed " + lexer.calls);
+
+        //改变状态的修改传播到状态重新一致为止
+        lexer.calls = 0;
+        p = LineTree.startOf(d.getLine(60));
+        d.replace(p, p, "/*".toCharArray(), 0, 2);
+        incremental.relex(Long.MAX_VALUE);
+        check(lexer.calls > 30 && lexer.calls < 100, "propagated " + lexer.calls);
+        verify(d, d.getLineCount(), "propagated");
+
+        //只分析到可见的行,时间预算为0时每次前进有限的行数
+        Document plain = new Document();
+        String code = "code;\n".repeat(5000);
+        plain.replace(0, 0, code.toCharArray(), 0, code.length());
+        IncrementalLexer<Boolean> partial = new IncrementalLexer<>(plain, new CommentLexer());
+        partial.relex(Long.MAX_VALUE);
+        plain.replace(0, 0, "/*\n".toCharArray(), 0, 3);
+        partial.relexTo(500);
+        verify(plain, 500, "relexTo");
+        check(partial.getDirtyLine() == 501, "dirty after relexTo " + partial.getDirtyLine());
+        check(!partial.relex(0), "budget");
+        check(partial.getDirtyLine() > 501, "progress");
+        check(partial.relex(Long.MAX_VALUE), "finish");
+        verify(plain, plain.getLineCount(), "after budget");
+        partial.dispose();
+
+        //随机修改,交替地分析部分和全部
+        for (int round = 0; round < 2000; round++) {
+            int len = d.getLength();
+            int s = r.nextInt(len + 1);
+            int e = s + r.nextInt(Math.min(len - s, 30) + 1);
+            String text = new String[]{"", "/*", "*/", "\n", "x\ny", "/*\n*/"}[r.nextInt(6)];
+            d.replace(s, e, text.toCharArray(), 0, text.length());
+            if (r.nextInt(3) == 0) {
+                int n = 1 + r.nextInt(d.getLineCount());
+                incremental.relexTo(n);
+                verify(d, n, "round " + round);
+            }
+            if (r.nextInt(10) == 0) {
+                incremental.relex(Long.MAX_VALUE);
+                verify(d, d.getLineCount(), "round " + round);
+            }
+        }
+        incremental.relex(Long.MAX_VALUE);
+        incremental.dispose();
+        d.replace(0, 0, "/*".toCharArray(), 0, 2);
+        check(!incremental.isDirty(), "disposed");
+        System.out.println("ok");
+    }
+
+    /**
+     * 前{@code n}行保存的状态应与从头分析的结果相同.
+     */
+    private static void verify(Document d, int n, String message) {
+        boolean state = false;
+        Line l = d.getLine(1);
+        for (int i = 1; i <= n; i++, l = l.next) {
+            state = CommentLexer.scan(l.toString(), state);
+            check(l.data != null && (Boolean) l.data == state, message + " line " + i);
+        }
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+}
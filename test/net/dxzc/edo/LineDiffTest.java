@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ *
+ * @author 823984418@qq.com
+ */
+public class LineDiffTest {
+
+    public static void main(String[] args) throws IOException {
+        Path path = Files.createTempFile("reload", ".txt");
+        try {
+            anchors(path);
+            cap(path);
+            random(path);
+        } finally {
+            Files.delete(path);
+        }
+        System.out.println("ok");
+    }
+
+    /**
+     * 未修改的行保留对象,指针和标记保持在原来的文字上.
+     */
+    private static void anchors(Path path) throws IOException {
+        Document d = document("alpha\nbeta\ngamma\ndelta\nepsilon");
+        Line beta = d.getLine(2);
+        Line delta = d.getLine(4);
+        beta.data = "b";
+        Pointer p = new Pointer(d);
+        p.moveTo(4, 2);
+        Pointer q = new Pointer(d);
+        q.moveTo(2, 4);
+        MarkerLayer layer = new MarkerLayer(d);
+        Marker m = layer.add(LineTree.startOf(delta) + 1, LineTree.startOf(delta) + 4);
+        write(path, "zero\nalpha\nbeta\nGAMMA\nG2\ndelta\nepsilon");
+        d.reloadFrom(path, StandardCharsets.UTF_8);
+        check(d.toString().equals("zero\nalpha\nbeta\nGAMMA\nG2\ndelta\nepsilon"), "content");
+        check(d.getLine(3) == beta && beta.data.equals("b"), "beta kept");
+        check(d.getLine(6) == delta, "delta kept");
+        check(p.getLine() == delta && p.getOffset() == 2 && p.getLineNumber() == 6, "pointer " + p);
+        check(q.getLine() == beta && q.getOffset() == 4, "pointer at line end " + q);
+        check(d.toString().substring(m.getStart(), m.getEnd()).equals("elt"), "marker");
+        check(d.undo(), "undo");
+        check(d.toString().equals("alpha\nbeta\ngamma\ndelta\nepsilon"), "undo content");
+    }
+
+    /**
+     * 超过编辑距离上限时中间部分作为一整块替换.
+     */
+    private static void cap(Path path) throws IOException {
+        int n = LineDiff.MAX_EDITS * 2;
+        StringBuilder a = new StringBuilder("head\n");
+        StringBuilder b = new StringBuilder("head\n");
+        for (int i = 0; i < n; i++) {
+            a.append("old ").append(i).append('\n');
+            b.append("new ").append(i).append('\n');
+        }
+        a.append("tail");
+        b.append("tail");
+        Document d = document(a.toString());
+        Document f = document(b.toString());
+        Line[] la = lines(d);
+        Line[] lb = lines(f);
+        int[] hunks = LineDiff.diff(la, 1, n + 1, lb, 1, n + 1);
+        check(hunks.length == 4 && hunks[0] == 1 && hunks[1] == n + 1 && hunks[2] == 1 && hunks[3] == n + 1, "fallback");
+        //上限之内仍然给出最小的块
+        Line[] lc = lines(document(a.toString().replace("old 7\n", "new 7\n")));
+        int[] small = LineDiff.diff(la, 1, n + 1, lc, 1, n + 1);
+        check(small.length == 4 && small[0] == 8 && small[1] == 9 && small[2] == 8 && small[3] == 9, "small");
+        Line head = d.getLine(1);
+        Line tail = d.getLine(n + 2);
+        Pointer p = new Pointer(d);
+        p.moveTo(n + 2, 2);
+        write(path, b.toString());
+        d.reloadFrom(path, StandardCharsets.UTF_8);
+        check(d.toString().equals(b.toString()), "cap content");
+        check(d.getLine(1) == head && d.getLine(n + 2) == tail, "cap anchors");
+        check(p.getLine() == tail && p.getOffset() == 2, "cap pointer");
+    }
+
+    /**
+     * 随机修改文件的行,重新载入后内容一致,未修改的行上的指针保持位置.
+     * 删除开头的行时第一行的对象承接其后的内容,因此只检查内容未变的行
+     */
+    private static void random(Path path) throws IOException {
+        Random r = new Random(22);
+        for (int round = 0; round < 50; round++) {
+            ArrayList<String> lines = new ArrayList<>();
+            int count = 1 + r.nextInt(300);
+            for (int i = 0; i < count; i++) {
+                lines.add("l" + r.nextInt(40));
+            }
+            Document d = document(String.join("\n", lines));
+            ArrayList<Pointer> pointers = new ArrayList<>();
+            ArrayList<Line> owners = new ArrayList<>();
+            ArrayList<Integer> offsets = new ArrayList<>();
+            ArrayList<String> texts = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                Pointer p = new Pointer(d);
+                int ln = 1 + r.nextInt(count);
+                p.moveTo(ln, r.nextInt(d.getLine(ln).length + 1));
+                pointers.add(p);
+                owners.add(p.getLine());
+                offsets.add(p.getOffset());
+                texts.add(p.getLine().toString());
+            }
+            int edits = r.nextInt(round < 40 ? 10 : 2000);
+            for (int i = 0; i < edits; i++) {
+                int k = r.nextInt(3);
+                int at = r.nextInt(lines.size() + 1);
+                if (k == 0) {
+                    lines.add(at, "n" + r.nextInt(40));
+                } else if (at < lines.size() && lines.size() > 1) {
+                    if (k == 1) {
+                        lines.remove(at);
+                    } else {
+                        lines.set(at, "c" + r.nextInt(40));
+                    }
+                }
+            }
+            String text = String.join("\n", lines);
+            write(path, text);
+            String before = d.toString();
+            d.reloadFrom(path, StandardCharsets.UTF_8);
+            check(d.toString().equals(text), "random content " + round);
+            Set<Line> alive = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Line l = d.getLine(1); l != null; l = l.next) {
+                alive.add(l);
+            }
+            for (int i = 0; i < pointers.size(); i++) {
+                Pointer p = pointers.get(i);
+                check(p.getLine() == d.getLine(p.getLineNumber()), "pointer line " + round);
+                //内容未变的行保留对象,其上的指针不动
+                if (alive.contains(owners.get(i)) && owners.get(i).toString().equals(texts.get(i))) {
+                    check(p.getLine() == owners.get(i) && p.getOffset() == offsets.get(i), "pointer kept " + round);
+                }
+            }
+            if (!text.equals(before)) {
+                check(d.undo() && d.toString().equals(before), "random undo " + round);
+            }
+        }
+    }
+
+    private static Line[] lines(Document d) {
+        Line[] lines = new Line[d.getLineCount()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = d.getLine(i + 1);
+        }
+        return lines;
+    }
+
+    private static void write(Path path, String text) throws IOException {
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Document document(String text) {
+        Document d = new Document();
+        d.replace(0, 0, text.toCharArray(), 0, text.length());
+        return d;
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+/**
+ *
+ * @author 823984418@qq.com
+ */
+public class LineStreamTest {
+
+    public static void main(String[] args) {
+        Random r = new Random(24);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            if (i > 0) {
+                sb.append('\n');
+            }
+            int kind = i == 0 ? 0 : r.nextInt(10);
+            int n = kind == 0 ? 3 * LineSpliterator.Chunks.CHUNK + r.nextInt(100) : r.nextInt(30);
+            for (int k = 0; k < n; k++) {
+                //char存储的行含有中文,其余的行以Latin-1存储
+                sb.append(kind == 1 && k == n / 2 ? '中' : k % 7 == 0 ? 'é' : (char) ('a' + r.nextInt(26)));
+            }
+        }
+        String text = sb.toString();
+        Document d = new Document();
+        d.replace(0, 0, text.toCharArray(), 0, text.length());
+        check(d.toString().equals(text), "content");
+        boolean latin1 = false;
+        boolean wide = false;
+        for (Line l = d.getLine(1); l != null; l = l.next) {
+            latin1 |= l.length > 0 && l.isLatin1();
+            wide |= l.length > 0 && !l.isLatin1();
+        }
+        check(latin1 && wide, "mixed storage");
+
+        //行的流
+        check(d.lines().map(CharSequence::toString).collect(Collectors.joining("\n")).equals(text), "lines");
+        check(d.lines().parallel().map(CharSequence::toString).collect(Collectors.joining("\n")).equals(text), "parallel lines");
+        String[] split = text.split("\n", -1);
+        check(d.lines(100, 200).map(CharSequence::toString).collect(Collectors.joining("\n"))
+                .equals(String.join("\n", Arrays.asList(split).subList(99, 199))), "line range");
+        for (CharSequence line : (Iterable<CharSequence>) d.lines()::iterator) {
+            if (line.length() > 10) {
+                String s = line.toString();
+                check(line.charAt(3) == s.charAt(3), "view charAt");
+                check(line.subSequence(2, 9).toString().equals(s.substring(2, 9)), "view subSequence");
+            }
+        }
+
+        //分割到不足两倍最小行数为止,各部分依次连接为整个文档
+        List<Spliterator<CharSequence>> parts = new ArrayList<>();
+        splitAll(d.lines().spliterator(), parts);
+        check(parts.size() > 1, "split");
+        StringBuilder joined = new StringBuilder();
+        long total = 0;
+        for (Spliterator<CharSequence> p : parts) {
+            long size = p.estimateSize();
+            check(size < 2 * LineSpliterator.MIN_SPLIT, "split size " + size);
+            total += size;
+            p.forEachRemaining(s -> joined.append(s).append('\n'));
+        }
+        check(total == d.getLineCount(), "split count");
+        check(joined.substring(0, joined.length() - 1).equals(text), "split content");
+
+        //块的流
+        //Latin-1的行分段转换到可写的缓冲,其余的块是只读视图
+        StringBuilder chunks = new StringBuilder();
+        int[] full = new int[1];
+        d.chunks().forEach(b -> {
+            if (!b.isReadOnly()) {
+                check(b.length() <= LineSpliterator.Chunks.CHUNK, "latin1 block " + b.length());
+                if (b.length() == LineSpliterator.Chunks.CHUNK) {
+                    full[0]++;
+                }
+            }
+            chunks.append(b);
+        });
+        check(full[0] > 0, "full latin1 blocks");
+        check(chunks.toString().equals(text), "chunks");
+        check(d.chunks().parallel().map(CharBuffer::toString).collect(Collectors.joining()).equals(text), "parallel chunks");
+
+        //正在遍历一行中间时不可分割
+        Spliterator<CharBuffer> cs = d.chunks().spliterator();
+        cs.tryAdvance(b -> {
+        });
+        check(cs.trySplit() == null, "split inside a line");
+
+        //整个文档的字符序列
+        CharSequence all = d.asCharSequence();
+        check(all.length() == text.length(), "text length");
+        for (int i = 0; i < text.length(); i += 1 + r.nextInt(50)) {
+            check(all.charAt(i) == text.charAt(i), "charAt " + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            int s = r.nextInt(text.length());
+            int e = s + r.nextInt(Math.min(text.length() - s, 40000) + 1);
+            check(all.subSequence(s, e).toString().equals(text.substring(s, e)), "subSequence");
+        }
+
+        //修改后遍历抛出异常
+        Spliterator<CharSequence> ls = d.lines().spliterator();
+        ls.tryAdvance(s -> {
+        });
+        Spliterator<CharBuffer> bs = d.chunks().spliterator();
+        d.replace(0, 0, "x".toCharArray(), 0, 1);
+        check(throwsCme(() -> ls.tryAdvance(s -> {
+        })), "lines after modification");
+        check(throwsCme(() -> bs.tryAdvance(s -> {
+        })), "chunks after modification");
+        check(throwsCme(() -> all.charAt(0)), "text after modification");
+        System.out.println("ok");
+    }
+
+    private static <T> void splitAll(Spliterator<T> s, List<Spliterator<T>> out) {
+        Spliterator<T> prefix = s.trySplit();
+        if (prefix == null) {
+            out.add(s);
+            return;
+        }
+        splitAll(prefix, out);
+        splitAll(s, out);
+    }
+
+    private static boolean throwsCme(Runnable action) {
+        try {
+            action.run();
+            return false;
+        } catch (ConcurrentModificationException e) {
+            return true;
+        }
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+}
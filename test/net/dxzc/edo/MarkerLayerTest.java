@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ *
+ * @author 823984418@qq.com
+ */
+public class MarkerLayerTest {
+
+    /**
+     * 朴素的区间,按文档修改的规则逐个调整.
+     */
+    private static final class Interval {
+
+        final Marker marker;
+
+        int start;
+
+        int end;
+
+        Interval(Marker marker, int start, int end) {
+            this.marker = marker;
+            this.start = start;
+            this.end = end;
+        }
+
+        void update(int pos, int removed, int inserted) {
+            int e = pos + removed;
+            int d = inserted - removed;
+            if (start > e) {
+                start += d;
+                end += d;
+            } else if (start >= pos) {
+                if (end > e) {
+                    start = pos + inserted;
+                    end += d;
+                } else {
+                    start = pos;
+                    end = pos;
+                }
+            } else if (end > pos) {
+                end = end > e ? end + d : pos;
+            }
+        }
+
+    }
+
+    public static void main(String[] args) {
+        edits();
+        random();
+        System.out.println("ok");
+    }
+
+    /**
+     * 边界上的插入,删除和替换.
+     */
+    private static void edits() {
+        Document d = document("0123456789");
+        MarkerLayer layer = new MarkerLayer(d);
+        Marker a = layer.add(2, 5);
+        Marker b = layer.add(5, 5);
+        Marker c = layer.add(5, 8);
+        //在结束位置插入不延伸,在开始位置插入向后移动
+        d.replace(5, 5, "xx".toCharArray(), 0, 2);
+        check(a.getStart() == 2 && a.getEnd() == 5, "end insert");
+        check(b.getStart() == 5 && b.getEnd() == 5, "empty insert");
+        check(c.getStart() == 7 && c.getEnd() == 10, "start insert");
+        //在内部插入延伸
+        d.replace(3, 3, "y".toCharArray(), 0, 1);
+        check(a.getStart() == 2 && a.getEnd() == 6, "stretch");
+        //删除覆盖开始位置时收缩到删除之后
+        d.replace(1, 4, new char[0], 0, 0);
+        check(a.getStart() == 1 && a.getEnd() == 3, "collapse start");
+        //完全删除时成为空范围
+        d.replace(0, 4, "zz".toCharArray(), 0, 2);
+        check(a.getStart() == 0 && a.getLength() == 0, "deleted");
+        check(layer.getMarkers(0, 0).contains(a), "deleted query");
+        check(a.remove() && !a.remove(), "remove");
+        check(layer.size() == 2, "size");
+        layer.dispose();
+        check(d.markerLayers.length == 0, "dispose");
+    }
+
+    /**
+     * 随机的增删,修改和查询,与朴素的区间列表比较.
+     */
+    private static void random() {
+        Random r = new Random(21);
+        Document d = document("");
+        for (int i = 0; i < 200; i++) {
+            d.replace(d.getLength(), d.getLength(), "line of text\n".toCharArray(), 0, 13);
+        }
+        MarkerLayer layer = new MarkerLayer(d);
+        ArrayList<Interval> naive = new ArrayList<>();
+        String[] pieces = {"", "a", "bc", "\n", "x\ny\n", "0123456789"};
+        for (int step = 0; step < 20000; step++) {
+            int n = d.getLength();
+            int k = r.nextInt(20);
+            if (k < 6) {
+                int s = r.nextInt(n + 1);
+                int e = s + r.nextInt(Math.min(n - s, 40) + 1);
+                naive.add(new Interval(layer.add(s, e), s, e));
+            } else if (k < 8 && !naive.isEmpty()) {
+                Interval x = naive.remove(r.nextInt(naive.size()));
+                check(x.marker.remove(), "remove");
+            } else if (k == 8 && r.nextInt(50) == 0) {
+                //整体替换
+                int m = r.nextInt(100);
+                int[] starts = new int[m];
+                int[] ends = new int[m];
+                for (int i = 0; i < m; i++) {
+                    starts[i] = r.nextInt(n + 1);
+                    ends[i] = starts[i] + r.nextInt(n - starts[i] + 1);
+                }
+                Marker[] ms = layer.set(starts, ends, null);
+                naive.clear();
+                for (int i = 0; i < m; i++) {
+                    naive.add(new Interval(ms[i], starts[i], ends[i]));
+                }
+            } else if (k < 16) {
+                int s = r.nextInt(n + 1);
+                int e = s + r.nextInt(Math.min(n - s, 30) + 1);
+                char[] text = pieces[r.nextInt(pieces.length)].toCharArray();
+                d.replace(s, e, text, 0, text.length);
+                for (Interval x : naive) {
+                    x.update(s, e - s, text.length);
+                }
+            } else if (k == 16 && n >= 30) {
+                //批次中的编辑依次从后向前应用
+                int[] pos = new int[3];
+                for (int i = 0; i < 3; i++) {
+                    pos[i] = n * i / 3 + r.nextInt(Math.max(1, n / 3 - 4));
+                }
+                d.edit(b -> {
+                    for (int p : pos) {
+                        b.replace(Math.min(p, n), Math.min(2, n - Math.min(p, n)), "ab");
+                    }
+                });
+                for (int i = 2; i >= 0; i--) {
+                    int p = Math.min(pos[i], n);
+                    int removed = Math.min(2, n - p);
+                    for (Interval x : naive) {
+                        x.update(p, removed, 2);
+                    }
+                }
+            } else {
+                int from = r.nextInt(d.getLength() + 1);
+                int to = from + r.nextInt(d.getLength() - from + 1);
+                query(layer, naive, from, to);
+            }
+            if (step % 500 == 0) {
+                verify(layer, naive);
+                int lines = d.getLineCount();
+                int fl = 1 + r.nextInt(lines);
+                int tl = fl + r.nextInt(lines - fl + 1);
+                Line last = d.getLine(tl);
+                List<Marker> got = layer.getMarkersOfLines(fl, tl);
+                check(same(got, expected(naive, LineTree.startOf(d.getLine(fl)), LineTree.startOf(last) + last.length)), "lines");
+            }
+        }
+        verify(layer, naive);
+        layer.clear();
+        check(layer.size() == 0 && layer.getMarkers(0, d.getLength()).isEmpty(), "clear");
+    }
+
+    private static void verify(MarkerLayer layer, ArrayList<Interval> naive) {
+        check(layer.size() == naive.size(), "size");
+        for (Interval x : naive) {
+            check(x.marker.getStart() == x.start && x.marker.getEnd() == x.end,
+                    "marker " + x.marker + " expected [" + x.start + "," + x.end + ")");
+        }
+    }
+
+    private static void query(MarkerLayer layer, ArrayList<Interval> naive, int from, int to) {
+        List<Marker> got = layer.getMarkers(from, to);
+        for (int i = 1; i < got.size(); i++) {
+            check(got.get(i - 1).getStart() <= got.get(i).getStart(), "order");
+        }
+        check(same(got, expected(naive, from, to)), "query [" + from + "," + to + "]");
+    }
+
+    private static HashSet<Marker> expected(ArrayList<Interval> naive, int from, int to) {
+        HashSet<Marker> set = new HashSet<>();
+        for (Interval x : naive) {
+            if (x.start <= to && x.end >= from) {
+                set.add(x.marker);
+            }
+        }
+        return set;
+    }
+
+    private static boolean same(List<Marker> got, HashSet<Marker> expected) {
+        return got.size() == expected.size() && expected.containsAll(got);
+    }
+
+    private static Document document(String text) {
+        Document d = new Document();
+        d.replace(0, 0, text.toCharArray(), 0, text.length());
+        return d;
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ *
+ * @author 823984418@qq.com
+ */
+public class PagedDocumentTest {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 8 << 20) {
+            sb.append("line ").append(sb.length()).append('\n');
+        }
+        String text = sb.toString();
+        String[] lines = text.split("\n", -1);
+        Path file = Files.createTempFile("paged", ".txt");
+        try {
+            Files.write(file, text.getBytes(StandardCharsets.ISO_8859_1));
+            Document d = Document.page(file, StandardCharsets.ISO_8859_1, 1 << 16);
+            check(d.isPaged(), "paged");
+            check(d.getLineCount() == lines.length, "line count");
+
+            //随机读取使块不断淘汰和重新载入,保留的内容不超过预算与一块之和
+            Random r = new Random(17);
+            for (int i = 0; i < 2000; i++) {
+                int n = 1 + r.nextInt(lines.length);
+                check(d.getLine(n).toString().equals(lines[n - 1]), "line " + n);
+            }
+            check(d.getResidentPageBytes() <= 2 << 20, "resident " + d.getResidentPageBytes());
+
+            //被中断的读取关闭的通道在下次读取时重新打开
+            Thread t = new Thread(() -> {
+                Thread.currentThread().interrupt();
+                for (int i = 0; i < 50; i++) {
+                    try {
+                        d.getLine(1 + (i * 7919) % lines.length).toString();
+                    } catch (UncheckedIOException e) {
+                        //中断的读取失败
+                    }
+                }
+            });
+            t.start();
+            t.join();
+            for (int i = 0; i < 200; i++) {
+                int n = 1 + r.nextInt(lines.length);
+                check(d.getLine(n).toString().equals(lines[n - 1]), "after interrupt " + n);
+            }
+
+            //关闭后已载入的块仍可读取,未载入的块抛出异常
+            d.close();
+            boolean failed = false;
+            for (int i = 0; i < 200 && !failed; i++) {
+                int n = 1 + r.nextInt(lines.length);
+                try {
+                    check(d.getLine(n).toString().equals(lines[n - 1]), "resident " + n);
+                } catch (UncheckedIOException e) {
+                    failed = true;
+                }
+            }
+            check(failed, "closed");
+        } finally {
+            Files.delete(file);
+        }
+        System.out.println("ok");
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ *
+ * @author 823984418@qq.com
+ */
+public class SearchTest {
+
+    public static void main(String[] args) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 4 * Search.PARALLEL_THRESHOLD) {
+            sb.append("abcdefghijklmnopqrstuvwxyz0123456789\n");
+        }
+        int tail = sb.length();
+        sb.append("needle\n");
+        String text = sb.toString();
+        Document d = new Document();
+        d.replace(new Pointer(d), new Pointer(d), text);
+
+        //只在文档末尾命中,每块只应查找到块后的有限窗口
+        Pattern p = Pattern.compile("ne+dle");
+        check(Arrays.equals(Search.regex(p).findAll(d), new int[]{tail, tail + 6}), "tail");
+
+        //跨越块边界的贪婪命中应与整体查找一致,包括超出预读窗口的命中
+        int mid = text.length() / 2;
+        for (int span : new int[]{40000, 10 * Search.REGEX_LOOKAHEAD}) {
+            d.replace(mid, mid + 1, "Z".toCharArray(), 0, 1);
+            d.replace(mid + span, mid + span + 1, "#".toCharArray(), 0, 1);
+            String s = d.toString();
+            for (String re : new String[]{"Z[^#]*#", "(?s)Z.*?#", "^needle$", "7\\n?8"}) {
+                Pattern q = Pattern.compile(re, Pattern.MULTILINE);
+                int[] expect = oracle(s, q);
+                check(!re.startsWith("Z") || Arrays.equals(expect, new int[]{mid, mid + span + 1}), "oracle " + re);
+                check(Arrays.equals(Search.regex(q).findAll(d), expect), re + " " + span);
+            }
+            d.replace(mid, mid + 1, text.toCharArray(), mid, mid + 1);
+            d.replace(mid + span, mid + span + 1, text.toCharArray(), mid + span, mid + span + 1);
+        }
+        System.out.println("ok");
+    }
+
+    private static int[] oracle(String s, Pattern p) {
+        int[] r = new int[16];
+        int n = 0;
+        Matcher m = p.matcher(s);
+        int at = 0;
+        while (at <= s.length() && m.find(at)) {
+            if (n == r.length) {
+                r = Arrays.copyOf(r, n * 2);
+            }
+            r[n++] = m.start();
+            r[n++] = m.end();
+            at = m.end() == m.start() ? m.end() + 1 : m.end();
+        }
+        return Arrays.copyOf(r, n);
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ *
+ * @author 823984418@qq.com
+ */
+public class SnapshotTest {
+
+    public static void main(String[] args) throws Exception {
+        widen();
+        inPlace();
+        undoAndBatch();
+        random();
+        paged();
+        System.out.println("ok");
+    }
+
+    /**
+     * 以Latin-1存储的行在快照之后被加宽.
+     */
+    private static void widen() {
+        Document d = document("hello\nworld");
+        Snapshot s = d.snapshot();
+        d.replace(2, 2, "中".toCharArray(), 0, 1);
+        check(s.toString().equals("hello\nworld"), "widen");
+        check(s.getLine(1).toString().equals("hello"), "widen line");
+        check(d.toString().equals("he中llo\nworld"), "widen document");
+        Snapshot t = d.snapshot();
+        d.replace(0, 3, "ab".toCharArray(), 0, 2);
+        check(t.toString().equals("he中llo\nworld"), "wide");
+        check(s.toString().equals("hello\nworld"), "widen again");
+    }
+
+    /**
+     * 缓冲有空余时修改在原处进行,快照不得看到.
+     */
+    private static void inPlace() {
+        Document d = document("abc\n");
+        d.replace(3, 3, "d".toCharArray(), 0, 1);
+        Snapshot s = d.snapshot();
+        for (int i = 0; i < 10; i++) {
+            d.replace(4 + i, 4 + i, "x".toCharArray(), 0, 1);
+        }
+        d.replace(0, 1, "Z".toCharArray(), 0, 1);
+        check(s.toString().equals("abcd\n"), "in place");
+        d.setPieceTable(true);
+        d.replace(d.getLength(), d.getLength(), "p\nq\nr".toCharArray(), 0, 5);
+        Snapshot t = d.snapshot();
+        d.replace(d.getLength() - 3, d.getLength() - 2, "Q".toCharArray(), 0, 1);
+        check(t.toString().equals("Zbcdxxxxxxxxxx\np\nq\nr"), "piece");
+    }
+
+    private static void undoAndBatch() {
+        Document d = document("one\ntwo\nthree");
+        Snapshot s = d.snapshot();
+        d.edit(b -> b.replace(0, 3, "1").insert(4, "2\n").delete(8, 2));
+        check(s.toString().equals("one\ntwo\nthree"), "batch");
+        Snapshot t = d.snapshot();
+        String edited = d.toString();
+        check(d.undo(), "undo");
+        check(d.toString().equals("one\ntwo\nthree"), "undo document");
+        check(t.toString().equals(edited), "undo snapshot");
+        check(d.redo(), "redo");
+        check(s.toString().equals("one\ntwo\nthree"), "redo snapshot");
+        check(d.toString().equals(edited), "redo document");
+    }
+
+    /**
+     * 随机修改,每步之后的快照都应保持当时的内容.
+     */
+    private static void random() {
+        Random r = new Random(7);
+        Document d = document("");
+        ArrayList<Snapshot> snapshots = new ArrayList<>();
+        ArrayList<String> texts = new ArrayList<>();
+        String[] pieces = {"a", "bc\n", "\n", "中", "éÿ", "xyz\nuvw\n", ""};
+        for (int step = 0; step < 3000; step++) {
+            int n = d.getLength();
+            int k = r.nextInt(10);
+            if (k == 0) {
+                d.undo();
+            } else if (k == 1) {
+                d.edit(b -> {
+                    for (int p = r.nextInt(8); p < n; p += 1 + r.nextInt(Math.max(1, n / 4))) {
+                        b.replace(p, r.nextInt(Math.min(3, n - p) + 1) == 0 ? 0 : 1, pieces[r.nextInt(pieces.length)]);
+                        p++;
+                    }
+                });
+            } else {
+                int start = r.nextInt(n + 1);
+                int end = start + r.nextInt(Math.min(4, n - start) + 1);
+                char[] text = pieces[r.nextInt(pieces.length)].toCharArray();
+                d.replace(start, end, text, 0, text.length);
+            }
+            if (r.nextInt(4) == 0) {
+                snapshots.add(d.snapshot());
+                texts.add(d.toString());
+            }
+        }
+        for (int i = 0; i < snapshots.size(); i++) {
+            Snapshot s = snapshots.get(i);
+            check(s.toString().equals(texts.get(i)), "random " + i);
+            check(s.getLength() == texts.get(i).length(), "random length " + i);
+        }
+    }
+
+    /**
+     * 分页的文档在其它线程读取快照时被修改.
+     */
+    private static void paged() throws IOException, InterruptedException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        String text = sb.toString();
+        Path path = Files.createTempFile("snapshot", ".txt");
+        try {
+            Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+            Document d = Document.page(path, StandardCharsets.UTF_8, 1 << 16);
+            Snapshot s = d.snapshot();
+            Throwable[] error = new Throwable[1];
+            Thread reader = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 5; i++) {
+                        check(s.toString().equals(text), "paged reader");
+                    }
+                } catch (Throwable e) {
+                    error[0] = e;
+                }
+            });
+            reader.start();
+            Random r = new Random(3);
+            for (int i = 0; i < 20000; i++) {
+                int p = r.nextInt(d.getLength());
+                d.replace(p, p, "中".toCharArray(), 0, 1);
+            }
+            reader.join();
+            check(error[0] == null, "paged " + error[0]);
+            check(s.toString().equals(text), "paged");
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static Document document(String text) {
+        Document d = new Document();
+        d.replace(0, 0, text.toCharArray(), 0, text.length());
+        return d;
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.util.Random;
+
+/**
+ *
+ * @author 823984418@qq.com
+ */
+public class SummaryTest {
+
+    /**
+     * 非ASCII字符数.
+     */
+    private static final Summary<Integer> NON_ASCII = new Summary<Integer>() {
+        @Override
+        public Integer identity() {
+            return 0;
+        }
+
+        @Override
+        public Integer of(Line line) {
+            return nonAscii(line.toString());
+        }
+
+        @Override
+        public Integer merge(Integer left, Integer right) {
+            return left + right;
+        }
+    };
+
+    /**
+     * 行长度序列的多项式散列. 合并不满足交换律,可以发现顺序错误
+     */
+    private static final Summary<long[]> ORDER = new Summary<long[]>() {
+        @Override
+        public long[] identity() {
+            return new long[]{0, 1};
+        }
+
+        @Override
+        public long[] of(Line line) {
+            return new long[]{line.length + 1, 31};
+        }
+
+        @Override
+        public long[] merge(long[] left, long[] right) {
+            return new long[]{left[0] * right[1] + right[0], left[1] * right[1]};
+        }
+    };
+
+    public static void main(String[] args) {
+        Random r = new Random(20);
+        Document d = new Document();
+        d.addSummary(NON_ASCII);
+        d.addSummary(ORDER);
+        for (int round = 0; round < 3000; round++) {
+            int len = d.getLength();
+            int op = r.nextInt(12);
+            if (op == 0) {
+                d.undo();
+            } else if (op == 1 && len > 0) {
+                int p = r.nextInt(len);
+                d.edit(b -> b.insert(p, text(r, 50)).replace(p, 1, text(r, 10)));
+            } else {
+                int s = r.nextInt(len + 1);
+                int e = s + r.nextInt(Math.min(len - s, 60) + 1);
+                String t = text(r, r.nextInt(5) == 0 ? 300 : 15);
+                d.replace(s, e, t.toCharArray(), 0, t.length());
+            }
+            if (round == 1000) {
+                //移除前面的摘要后其后的摘要的序号改变
+                check(d.removeSummary(NON_ASCII), "remove");
+                check(!d.removeSummary(NON_ASCII), "remove twice");
+            }
+            if (round == 2000) {
+                d.addSummary(NON_ASCII);
+            }
+            if (round % 20 == 0) {
+                verify(d, r, round < 1000 || round >= 2000, "round " + round);
+            }
+        }
+        System.out.println("ok");
+    }
+
+    private static String text(Random r, int max) {
+        int n = r.nextInt(max + 1);
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++) {
+            int k = r.nextInt(16);
+            sb.append(k == 0 ? '\n' : k == 1 ? ' ' : k == 2 ? '\t' : k == 3 ? 'é' : k == 4 ? '中'
+                    : k == 5 ? "😀" : String.valueOf((char) ('a' + r.nextInt(26))));
+        }
+        return sb.toString();
+    }
+
+    private static void verify(Document d, Random r, boolean nonAscii, String message) {
+        String text = d.toString();
+        String[] lines = text.split("\n", -1);
+        int max = 0;
+        for (String l : lines) {
+            max = Math.max(max, l.length());
+        }
+        check(d.getMaxLineLength() == max, message + " max line length");
+        check(d.getWordCount() == words(text), message + " words");
+        check(d.getCodePointCount() == text.codePointCount(0, text.length()), message + " code points");
+        if (nonAscii) {
+            check(d.getSummary(NON_ASCII) == nonAscii(text.replace("\n", "")), message + " non ascii");
+        }
+        check(d.getSummary(ORDER)[0] == order(lines, 0, lines.length), message + " order");
+        for (int k = 0; k < 5; k++) {
+            int from = 1 + r.nextInt(lines.length);
+            int to = from + r.nextInt(lines.length - from + 2);
+            check(d.getSummary(ORDER, from, to)[0] == order(lines, from - 1, to - 1), message + " order range");
+            if (nonAscii) {
+                int expect = 0;
+                for (int i = from - 1; i < to - 1; i++) {
+                    expect += nonAscii(lines[i]);
+                }
+                check(d.getSummary(NON_ASCII, from, to) == expect, message + " non ascii range");
+            }
+            long w = 0;
+            for (int i = from - 1; i < to - 1; i++) {
+                w += words(lines[i]);
+            }
+            check(d.getSummary(Summary.WORDS, from, to) == w, message + " words range");
+        }
+    }
+
+    private static int nonAscii(String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static long words(String s) {
+        long n = 0;
+        boolean in = false;
+        for (int i = 0; i < s.length(); i++) {
+            boolean w = !Character.isWhitespace(s.charAt(i));
+            if (w && !in) {
+                n++;
+            }
+            in = w;
+        }
+        return n;
+    }
+
+    private static long order(String[] lines, int from, int to) {
+        long h = 0;
+        for (int i = from; i < to; i++) {
+            h = h * 31 + lines[i].length() + 1;
+        }
+        return h;
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+}
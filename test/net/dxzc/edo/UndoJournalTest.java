@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.util.Random;
+
+/**
+ *
+ * @author 823984418@qq.com
+ */
+public class UndoJournalTest {
+
+    public static void main(String[] args) {
+        Random r = new Random(6);
+        for (int round = 0; round < 200; round++) {
+            Document d = new Document();
+            d.setUndoLimit(1 + r.nextInt(4000));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 300; i++) {
+                sb.append((char) ('a' + r.nextInt(26)));
+            }
+            d.replace(0, 0, sb.toString().toCharArray(), 0, sb.length());
+            String[] states = new String[40];
+            int n = 0;
+            for (int step = 0; step < 40; step++) {
+                states[n++] = d.toString();
+                int len = d.getLength();
+                if (r.nextBoolean()) {
+                    //超出预算的组
+                    int k = 1 + r.nextInt(30);
+                    d.edit(b -> {
+                        for (int i = 0; i < k; i++) {
+                            int p = len * i / k;
+                            b.replace(p, len / k > 1 ? 1 : 0, "xyz".substring(r.nextInt(3)));
+                        }
+                    });
+                } else {
+                    int p = r.nextInt(len + 1);
+                    d.replace(p, Math.min(len, p + r.nextInt(5)), "q\n".toCharArray(), 0, 2);
+                }
+            }
+            //每次撤销都恢复到某个完整的状态,组不会被拆开
+            int at = n;
+            while (d.undo()) {
+                String s = d.toString();
+                while (at > 0 && !states[at - 1].equals(s)) {
+                    at--;
+                }
+                check(at > 0, "partial group " + round);
+                at--;
+            }
+            check(d.getUndoLimit() > 0, "limit");
+        }
+        System.out.println("ok");
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+}
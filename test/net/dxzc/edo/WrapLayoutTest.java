@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2020, 823984418@qq.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.dxzc.edo;
+
+import java.util.Random;
+
+/**
+ *
+ * @author 823984418@qq.com
+ */
+public class WrapLayoutTest {
+
+    public static void main(String[] args) {
+        Random r = new Random(19);
+        Document d = new Document();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            sb.append(text(r, r.nextInt(4) == 0 ? 300 : 40)).append('\n');
+        }
+        d.replace(0, 0, sb.toString().toCharArray(), 0, sb.length());
+        WrapLayout layout = new WrapLayout(d, 80, 4);
+        verify(d, layout, r, "initial");
+        try {
+            new WrapLayout(d, 80, 4);
+            check(false, "second layout");
+        } catch (IllegalStateException e) {
+            //一个文档只能有一个布局
+        }
+
+        for (int round = 0; round < 3000; round++) {
+            int len = d.getLength();
+            int op = r.nextInt(10);
+            if (op == 0) {
+                d.undo();
+            } else if (op == 1) {
+                int p = r.nextInt(len / 2 + 1);
+                int q = len / 2 + r.nextInt(len - len / 2 + 1);
+                d.edit(b -> b.insert(p, text(r, 100)).insert(q, "\n" + text(r, 200)));
+            } else {
+                int s = r.nextInt(len + 1);
+                int e = s + r.nextInt(Math.min(len - s, 200) + 1);
+                String t = text(r, r.nextInt(3) == 0 ? 500 : 20);
+                d.replace(s, e, t.toCharArray(), 0, t.length());
+            }
+            if (round % 50 == 0) {
+                verify(d, layout, r, "round " + round);
+            }
+            if (round % 700 == 0) {
+                layout.setWidth(20 + r.nextInt(100), 1 + r.nextInt(8));
+                verify(d, layout, r, "width " + round);
+            }
+        }
+        layout.dispose();
+        for (Line l = d.getLine(1); l != null; l = l.next) {
+            check(l.rows == 1, "disposed rows");
+        }
+        check(LineTree.rows(d.tree.root) == d.getLineCount(), "disposed row count");
+        layout = new WrapLayout(d, 1, 1);
+        verify(d, layout, r, "narrow");
+        System.out.println("ok");
+    }
+
+    private static String text(Random r, int max) {
+        int n = r.nextInt(max + 1);
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++) {
+            int k = r.nextInt(20);
+            sb.append(k == 0 ? '\t' : k == 1 ? '中' : k == 2 ? '\n' : k == 3 ? '\u0301' : (char) ('a' + r.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 每行的显示行数与其显示列一致,显示行和行之间的查找与逐行累加一致.
+     */
+    private static void verify(Document d, WrapLayout layout, Random r, String message) {
+        int width = layout.getWidth();
+        int tab = layout.getTabSize();
+        int row = 0;
+        int n = 1;
+        for (Line l = d.getLine(1); l != null; l = l.next, n++) {
+            int columns = l.getVisualColumn(l.length, tab);
+            int rows = columns <= width ? 1 : (columns - 1) / width + 1;
+            check(layout.getRows(n) == rows, message + " rows of line " + n);
+            check(layout.getFirstRow(n) == row, message + " first row of line " + n);
+            if (r.nextInt(8) == 0) {
+                int k = row + r.nextInt(rows);
+                check(layout.getLineNumberOfRow(k) == n && layout.getLineOfRow(k) == l, message + " row " + k);
+            }
+            row += rows;
+        }
+        check(layout.getRowCount() == row, message + " row count");
+        try {
+            layout.getLineNumberOfRow(row);
+            check(false, message + " row out of range");
+        } catch (IndexOutOfBoundsException e) {
+            //超出范围
+        }
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+}